@@ -0,0 +1,52 @@
+package cards.blackjack;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cards.blackjack.Blackjack.Action;
+import cards.common.SplitMixRandom;
+
+/**
+ * Benchmarks rendering a table on the console with the {@link ConsoleGameViewer} and the {@link ConsoleRenderer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark {
+    @Param({"1", "3", "7"})
+    int players;
+
+    private Blackjack game;
+
+    private final ConsoleGameViewer viewer = new ConsoleGameViewer();
+
+    private final ConsoleRenderer renderer = new ConsoleRenderer(false);
+
+    @Setup
+    public void setup() {
+        game = new Blackjack(players, 0, TableRules.builder().decks(6).build(), new SplitMixRandom(42));
+        int[] bets = new int[players];
+        Arrays.fill(bets, 1);
+        game.action(Action.DEAL, bets);
+    }
+
+    @Benchmark
+    public List<String> render() {
+        return game.accept(viewer);
+    }
+
+    @Benchmark
+    public CharSequence renderFrame() {
+        return renderer.render(game).frame();
+    }
+}
@@ -0,0 +1,57 @@
+package cards.blackjack;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+import cards.common.SplitMixRandom;
+
+/**
+ * Benchmarks playing a full round through {@link Blackjack#action}, from the deal to the settlement, the way the
+ * {@link Simulator} does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RoundBenchmark {
+    @Param({"1", "3", "7"})
+    int players;
+
+    @Param({"1", "6", "8"})
+    int decks;
+
+    private Blackjack game;
+
+    private int[] bets;
+
+    @Setup
+    public void setup() {
+        game = new Blackjack(players, 0, TableRules.builder().decks(decks).build(), new SplitMixRandom(42));
+        bets = new int[players];
+        Arrays.fill(bets, 1);
+    }
+
+    @Benchmark
+    public GameState round() {
+        GameState state = game.action(Action.DEAL, bets);
+        while (state == GameState.INPLAY) {
+            BlackjackPlayer player = game.currentPlayer();
+            Action action = (player.getState() == PlayerState.INPLAY)
+                    ? PlayerPolicy.MIMIC_DEALER.decide(player, game.dealer().getHand().rankAt(0))
+                    : Action.HIT;
+            state = game.action(action);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,88 @@
+package cards.blackjack;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.common.SplitMixRandom;
+
+/**
+ * Benchmarks the end of a round for tables of different widths: the last player standing, the dealer playing out
+ * the hand and the round being settled against the dealer in a single pass over the seats.
+ * <p>
+ * A settlement is too short to be timed on its own after an untimed deal, so a batch of tables is dealt before each
+ * iteration, played up to the last player through {@link Blackjack#action}, and the iteration times settling all of
+ * them once. The score is the time per table. Each iteration being a single shot, it takes a few hundred of them
+ * for the settlement to be compiled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 400)
+@Measurement(iterations = 100)
+public class SettlementBenchmark {
+    /**
+     * Number of tables settled by an iteration.
+     */
+    static final int TABLES = 256;
+
+    @Param({"1", "7", "50", "500"})
+    int players;
+
+    private Blackjack[] games;
+
+    private int[] bets;
+
+    @Setup
+    public void setup() {
+        // A community table needs a shoe large enough to deal to every seat
+        int decks = Math.max(8, players / 10);
+        TableRules rules = TableRules.builder().decks(decks).build();
+        games = new Blackjack[TABLES];
+        for (int table = 0; table < TABLES; table++) {
+            games[table] = new Blackjack(players, 0, rules, new SplitMixRandom(SplitMixRandom.seedFor(42, table)));
+        }
+        bets = new int[players];
+        Arrays.fill(bets, 1);
+    }
+
+    /**
+     * Deals a round on every table in which the last player is in turn, every other player standing.
+     */
+    @Setup(Level.Iteration)
+    public void deal() {
+        for (Blackjack game : games) {
+            BlackjackPlayer last = game.players().get(players);
+            GameState state;
+            do {
+                state = game.action(Action.DEAL, bets);
+                while (state == GameState.INPLAY && game.currentPlayer() != last) {
+                    state = game.action(Action.STAND);
+                }
+            } while (state != GameState.INPLAY);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TABLES)
+    public void settle(Blackhole blackhole) {
+        for (Blackjack game : games) {
+            blackhole.consume(game.action(Action.STAND));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cards.blackjack;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cards.common.Cards;
+import cards.common.Rank;
+import cards.common.Suit;
+
+/**
+ * Benchmarks the valuation of a hand, {@link BlackjackPlayer#value()} and {@link BlackjackPlayer#softValue()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValuationBenchmark {
+    private final int[] codes = {
+        Cards.encode(Rank.ACE, Suit.SPADE),
+        Cards.encode(Rank.FIVE, Suit.HEART),
+        Cards.encode(Rank.ACE, Suit.CLUB),
+        Cards.encode(Rank.KING, Suit.DIAMOND)
+    };
+
+    private BlackjackPlayer player;
+
+    @Setup
+    public void setup() {
+        player = new BlackjackPlayer();
+        for (int code : codes) {
+            player.getHand().addCard(code);
+        }
+    }
+
+    @Benchmark
+    public int value() {
+        return player.value();
+    }
+
+    @Benchmark
+    public int softValue() {
+        return player.softValue();
+    }
+
+    /**
+     * Dealing the hand from scratch and valuing it.
+     */
+    @Benchmark
+    public int dealAndValue() {
+        player.getHand().clear();
+        for (int code : codes) {
+            player.getHand().addCard(code);
+        }
+        return player.softValue();
+    }
+}
@@ -0,0 +1,65 @@
+package cards.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks shuffling and dealing from a {@link Shoe}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ShoeBenchmark {
+    /**
+     * Cards dealt in a round, roughly 2.7 cards for each of 3 players and the dealer.
+     */
+    private static final int CARDS_PER_ROUND = 11;
+
+    @Param({"1", "6", "8"})
+    int decks;
+
+    private Shoe shoe;
+
+    @Setup
+    public void setup() {
+        shoe = new Shoe(decks, 1.0, new SplitMixRandom(42));
+    }
+
+    @Benchmark
+    public Shoe shuffle() {
+        return shoe.reshuffle();
+    }
+
+    /**
+     * Rounds dealt from a shoe, only used by {@link ShoeBenchmark#shoeLife(Life)}.
+     */
+    @State(Scope.Thread)
+    public static class Life {
+        @Param({"1", "5", "20"})
+        int roundsPerShoe;
+    }
+
+    /**
+     * Life of a shoe: reshuffled once and dealt for the configured rounds.
+     */
+    @Benchmark
+    public int shoeLife(Life life) {
+        shoe.reshuffle();
+        int sum = 0;
+        for (int round = 0; round < life.roundsPerShoe; round++) {
+            shoe.beginRound();
+            for (int card = 0; card < CARDS_PER_ROUND; card++) {
+                sum += shoe.pop();
+            }
+        }
+        return sum;
+    }
+}
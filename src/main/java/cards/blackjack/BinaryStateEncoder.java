@@ -0,0 +1,78 @@
+package cards.blackjack;
+
+import java.nio.ByteBuffer;
+
+import cards.common.Card;
+import cards.common.Cards;
+import cards.common.Hand;
+import cards.common.Visitor;
+
+/**
+ * Visitor writing a {@link Blackjack} table in the compact binary form pushed to the players by the
+ * {@link NetworkServer}. All the values are big endian:
+ * <pre>
+ * table  : u8 game state, u16 legal actions mask, u16 current seat, u16 seats, seat...
+ * seat   : f64 chips, u8 hands, u8 hand in play, u8 state visible (0 or 1), hand...
+ * hand   : u32 bet, u8 state, u8 rule (0xFF till settled), u8 cards, card...
+ * card   : u8 card code, see {@link Cards}, or 0xFF for a card face down
+ * </pre>
+ * The seats start with the dealer, and the states, rules and game state are given by their ordinals. Each visit
+ * appends to the buffer given and returns it.
+ */
+public class BinaryStateEncoder implements Visitor<ByteBuffer, Blackjack, BlackjackPlayer> {
+    /**
+     * Code of a card dealt face down, or of a rule not yet settled.
+     */
+    public static final int HIDDEN = 0xFF;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer the buffer to write to, from its position on
+     */
+    public BinaryStateEncoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public ByteBuffer visit(Blackjack game) {
+        buffer.put((byte) game.getState().ordinal());
+        buffer.putShort((short) game.getState().getActionMask());
+        buffer.putShort((short) game.players().indexOf(game.currentPlayer()));
+        buffer.putShort((short) game.players().size());
+        for (BlackjackPlayer player : game.players()) {
+            player.accept(this);
+        }
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer visit(BlackjackPlayer player) {
+        buffer.putDouble(player.getChips());
+        buffer.put((byte) player.getHandCount());
+        buffer.put((byte) player.getActiveHand());
+        buffer.put((byte) (player.isStateVisible() ? 1 : 0));
+        for (int hand = 0; hand < player.getHandCount(); hand++) {
+            Blackjack.Rule rule = player.getRule(hand);
+            buffer.putInt(player.getBet(hand));
+            buffer.put((byte) player.getState(hand).ordinal());
+            buffer.put((byte) ((rule == null) ? HIDDEN : rule.ordinal()));
+            player.getHand(hand).accept(this);
+        }
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer visit(Hand hand) {
+        buffer.put((byte) hand.size());
+        for (int idx = 0; idx < hand.size(); idx++) {
+            buffer.put((byte) (hand.isFaceUp(idx) ? hand.cardAt(idx) : HIDDEN));
+        }
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer visit(Card card) {
+        return buffer.put((byte) Cards.encode(card));
+    }
+}
@@ -2,41 +2,29 @@ package cards.blackjack;
 
 import java.io.StringWriter;
 import java.util.List;
+import java.util.Set;
 
 import cards.blackjack.BlackjackPlayer.PlayerState;
-import cards.common.Card;
-import cards.common.Deck;
+import cards.common.Hand;
 import cards.common.Game;
 import cards.common.Player;
+import cards.common.RandomSource;
 import cards.common.Visitor;
 import cards.common.Rank;
-import cards.common.RankValue;
+import cards.common.RunningCount;
+import cards.common.Shoe;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 public class Blackjack implements Game {
     /**
-     * Specifies if dealer hand is hard or soft
+     * Parameters of the actions which take none.
      */
-    private static final boolean HARD_STAND = Boolean.getBoolean("hardStand");
+    private static final int[] NO_PARAMS = new int[0];
     
-    /**
-     * Specifies blackjack win factor
-     */
-    private static final double BLACKJACK_WIN_FACTOR = getWinFactor();
-    private static double getWinFactor() {
-        double factor = 1.5;
-        try {
-            factor = Double.parseDouble(System.getProperty("blackjackWinFactor"));
-        } catch (final Exception e) {
-            // Ignore and use default
-        }
-        return factor;
-    }
+    private static final GameState[] GAME_STATES = GameState.values();
     
     /* Initialized game information. */
     
@@ -46,9 +34,28 @@ public class Blackjack implements Game {
     private int numPlayers;
     
     /**
-     * Number of decks to be used in the game.
+     * Rules of the table.
+     */
+    private TableRules rules;
+
+    /**
+     * Source of randomness for shuffling the shoe.
+     */
+    private RandomSource random;
+
+    /**
+     * Source of randomness of the shoe, recording the values drawn in the journal so the shuffles can be replayed.
      */
-    private int numDecks;
+    private final RandomSource shuffler = new RandomSource() {
+        @Override
+        public int nextInt(int bound) {
+            int value = random.nextInt(bound);
+            if (journal != null) {
+                journal.shuffle(value);
+            }
+            return value;
+        }
+    };
 
     /**
      * Number of chips available to each player.
@@ -60,20 +67,48 @@ public class Blackjack implements Game {
     /* State information per game */
     
     /**
-     * The deck(s) of cards for the game.
+     * The shoe holding the deck(s) of cards for the game. Dealt from across rounds.
      */
-    private Deck deck;
+    private Shoe deck;
     
     /**
      * List of players. Includes the dealer at 1st (index 0) position.
      */
     private List<BlackjackPlayer> players;
     
+    /**
+     * Chips of the players and state of their hands, the players being views over its seats.
+     */
+    private SeatStore seats;
+    
+    /**
+     * Factor of the bet paid by each rule at the table, indexed by the rule ordinal.
+     */
+    private double[] payouts;
+    
+    /**
+     * Running counts attached to the shoe, indexed by the {@link CountingSystem} ordinal.
+     */
+    private RunningCount[] runningCounts;
+    
     /**
      * Keeps track of the game state.
      */
     private GameState state;
     
+    /**
+     * Journal recording the events of the table, if any.
+     */
+    private RoundJournal journal;
+    
+    /**
+     * Actions to perform before timing the next one, and cards drawn in the current action, for the
+     * {@link TableMetrics}.
+     */
+    private int untimedActions;
+    
+    private int cardsDrawn;
+    
     /**
      * State information of the current player.
      */
@@ -85,37 +120,106 @@ public class Blackjack implements Game {
         return state;
     }
     
+    /**
+     * Whether the action is legal in the current state of the game. Doubling down and splitting also have to be
+     * allowed for the hand in play.
+     * 
+     * @param action the action
+     * @return      true if legal
+     */
+    public boolean isLegal(Action action) {
+        if (!state.allows(action)) {
+            return false;
+        }
+        switch (action) {
+            case DOUBLEDOWN:
+                return currentPlayer().canDoubleDown();
+            case SPLIT:
+                return currentPlayer().canSplit();
+            default:
+                return true;
+        }
+    }
+    
+    /**
+     * Creates a game with the rules configured by the system properties.
+     * 
+     * @param numPlayers the number of players excluding the dealer
+     * @param numDecks the number of decks in the shoe
+     * @param chips the chips available to each player
+     */
     public Blackjack(int numPlayers, int numDecks, int chips) {
+        this(numPlayers, chips, TableRules.fromSystemProperties().decks(numDecks).build());
+    }
+    
+    /**
+     * @param numPlayers the number of players excluding the dealer
+     * @param chips the chips available to each player
+     * @param rules the rules of the table
+     */
+    public Blackjack(int numPlayers, int chips, TableRules rules) {
+        this(numPlayers, chips, rules, RandomSource.THREAD_LOCAL);
+    }
+    
+    /**
+     * Creates a game shuffling with the given source of randomness. A table created with a seeded
+     * {@link cards.common.SplitMixRandom} replays the same rounds for the same actions.
+     * 
+     * @param numPlayers the number of players excluding the dealer
+     * @param chips the chips available to each player
+     * @param rules the rules of the table
+     * @param random the source of randomness for shuffling the shoe
+     */
+    public Blackjack(int numPlayers, int chips, TableRules rules, RandomSource random) {
         this.numPlayers = numPlayers;
-        this.numDecks = numDecks;
         this.chips = chips;
+        this.rules = rules;
+        this.random = random;
         init();
     }
     
+    public TableRules getRules() {
+        return rules;
+    }
+    
+    /**
+     * Starts counting the cards dealt from the shoe, or returns the count already attached for the system. A
+     * {@link Action#RESET} brings in a new shoe which has to be counted again.
+     * 
+     * @param system the counting system
+     * @return      the running count
+     */
+    public RunningCount countCards(CountingSystem system) {
+        RunningCount count = runningCounts[system.ordinal()];
+        if (count == null) {
+            count = system.count(deck);
+            runningCounts[system.ordinal()] = count;
+        }
+        return count;
+    }
+    
+    /**
+     * Number of cards of the rank left in the shoe.
+     * 
+     * @param rank the rank
+     * @return      the number of cards
+     */
+    public int remaining(Rank rank) {
+        return deck.remaining(rank);
+    }
+    
      private void init() {
-        /** Override the RankValue with the blackjack specific RankValue **/
-        Rank.rankValue = new RankValue() {
-            @Override
-            public int getValue(Rank rank) {
-                /* Override values for Jack, Queen and King */
-                if (rank == Rank.JACK || rank == Rank.QUEEN || rank == Rank.KING) {
-                    switch(rank) {
-                        case JACK:
-                        case QUEEN:
-                        case KING:
-                        default :
-                            return 10;
-                    }
-                } else {
-                    return super.getValue(rank);
-                }
-            }
-        };
-        deck = new Deck(numDecks);
-        players = Lists.newArrayList();
+        deck = new Shoe(rules.getNumDecks(), rules.getPenetration(), shuffler);
+        runningCounts = new RunningCount[CountingSystem.values().length];
+        players = Lists.newArrayListWithCapacity(numPlayers + 1);
+        seats = new SeatStore(rules, numPlayers + 1);
+        payouts = new double[Rule.values().length];
+        for (Rule rule : Rule.values()) {
+            payouts[rule.ordinal()] = rule.payout(rules);
+        }
         
         // Add the first player as the dealer
-        BlackjackPlayer dealer = new BlackjackPlayer();
+        BlackjackPlayer dealer = new BlackjackPlayer(seats, 0);
         dealer.setName("Dealer");
         dealer.setType(Operator.DEALER.toString());
         dealer.setStateVisible(false);
@@ -123,7 +227,7 @@ public class Blackjack implements Game {
         
         // Add players
         for (int idx = 0; idx < numPlayers; idx++) {
-            players.add((BlackjackPlayer) new BlackjackPlayer()
+            players.add((BlackjackPlayer) new BlackjackPlayer(seats, idx + 1)
                             .setType(Operator.PLAYER.toString())
                             .setName("player " + (idx + 1))
                             .setChips(chips));
@@ -135,9 +239,9 @@ public class Blackjack implements Game {
     /**
      * Returns the current player
      * 
-     * @return
+     * @return      the player whose turn it is
      */
-    private BlackjackPlayer currentPlayer() {
+    BlackjackPlayer currentPlayer() {
         return players.get(currentPlayerIdx);
     }
     
@@ -167,7 +271,173 @@ public class Blackjack implements Game {
      * @return      game state
      */
     public GameState action(String action, int[] params) {
-        return Action.valueOf(action).perform(this, params);
+        return action(Action.valueOf(action), params);
+    }
+    
+    /**
+     * Performs an action which takes no parameters, e.g. {@link Action#HIT}, {@link Action#STAND} or
+     * {@link Action#DOUBLEDOWN}.
+     * 
+     * @param action the action to take
+     * @return      game state
+     */
+    public GameState action(Action action) {
+        if (action.paramsRequired(this) != 0) {
+            throw new IllegalArgumentException(action + " needs " + action.paramsRequired(this) + " parameters");
+        }
+        return action(action, NO_PARAMS);
+    }
+    
+    /**
+     * Performs the action of the given opcode, see {@link Action#getOpcode()}.
+     * 
+     * @param opcode the opcode of the action to take
+     * @param params any parameters needed to perform action
+     * @return      game state
+     */
+    public GameState action(int opcode, int[] params) {
+        return action(Action.fromOpcode(opcode), params);
+    }
+    
+    /**
+     * Performs the action on the game, recording it in the journal if there is one and timing it if the
+     * {@link TableMetrics} are enabled.
+     * 
+     * @param action the action to take
+     * @param params any parameters needed to perform action
+     * @return      game state
+     */
+    public GameState action(Action action, int[] params) {
+        if (!TableMetrics.ENABLED) {
+            return perform(action, params);
+        }
+        boolean timed = --untimedActions < 0;
+        long start = timed ? System.nanoTime() : 0;
+        try {
+            return perform(action, params);
+        } finally {
+            long nanos = -1;
+            if (timed) {
+                nanos = System.nanoTime() - start;
+                untimedActions = TableMetrics.SAMPLE_INTERVAL - 1;
+            }
+            TableMetrics.getInstance().actionPerformed(action, nanos, cardsDrawn);
+            cardsDrawn = 0;
+        }
+    }
+    
+    private GameState perform(Action action, int[] params) {
+        if (journal == null) {
+            return state = action.perform(this, params);
+        }
+        journal.action(action, params);
+        try {
+            state = action.perform(this, params);
+        } catch (RuntimeException e) {
+            journal.error();
+            throw e;
+        }
+        return state;
+    }
+    
+    /**
+     * Starts recording the events of the table in the journal. Only a new table, or one just reset, can be
+     * recorded so that it can be replayed from the journal.
+     * 
+     * @param journal the journal
+     * @return      this game
+     */
+    public Blackjack setJournal(RoundJournal journal) {
+        if (state != GameState.START) {
+            throw new IllegalStateException("Only a new table can be recorded, the game is " + state);
+        }
+        journal.table(numPlayers, chips, rules, deck);
+        this.journal = journal;
+        return this;
+    }
+    
+    /**
+     * Saves the state of the table: the shoe, the hands, bets and chips of the players and whose turn it is.
+     * 
+     * @return      the snapshot
+     */
+    public TableSnapshot snapshot() {
+        return snapshot(new TableSnapshot());
+    }
+    
+    /**
+     * Saves the state of the table to a snapshot reused from save to save, which allocates nothing once the
+     * snapshot is large enough.
+     * 
+     * @param snapshot the snapshot to overwrite
+     * @return      the snapshot
+     */
+    public TableSnapshot snapshot(TableSnapshot snapshot) {
+        snapshot.clear();
+        snapshot.putInt(players.size());
+        snapshot.putInt(state.ordinal());
+        snapshot.putInt(currentPlayerIdx);
+        deck.save(snapshot.shoe);
+        for (int idx = 0; idx < players.size(); idx++) {
+            players.get(idx).save(snapshot);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Sets the table back to the state saved in the snapshot. A table being recorded can not be restored as the
+     * journal could not be replayed.
+     * 
+     * @param snapshot a snapshot of this table or of another with the same players and rules
+     * @return      this game
+     */
+    public Blackjack restore(TableSnapshot snapshot) {
+        if (journal != null) {
+            throw new IllegalStateException("A table recorded in a journal can not be restored");
+        }
+        snapshot.rewind();
+        if (snapshot.getInt() != players.size()) {
+            throw new IllegalArgumentException("The snapshot is not of a table with " + numPlayers + " players");
+        }
+        GameState savedState = GAME_STATES[snapshot.getInt()];
+        int savedPlayerIdx = snapshot.getInt();
+        deck.restore(snapshot.shoe);
+        state = savedState;
+        currentPlayerIdx = savedPlayerIdx;
+        for (int idx = 0; idx < players.size(); idx++) {
+            players.get(idx).restore(snapshot);
+        }
+        return this;
+    }
+    
+    /**
+     * Returns the shoe, to lay it out as recorded when replaying a journal.
+     * 
+     * @return      the shoe
+     */
+    Shoe shoe() {
+        return deck;
+    }
+    
+    /**
+     * Deals the next card of the shoe, recording it in the journal if there is one.
+     * 
+     * @param seat the seat the card is dealt to, the dealer being 0
+     * @return      the card code
+     * @throws IllegalStateException if all the cards of the shoe are in play
+     */
+    private int draw(int seat) {
+        int code = deck.pop();
+        if (code < 0) {
+            throw new IllegalStateException("The shoe is exhausted, all its cards are in play");
+        }
+        if (TableMetrics.ENABLED) {
+            cardsDrawn++;
+        }
+        if (journal != null) {
+            journal.card(seat, code);
+        }
+        return code;
     }
     
     /**
@@ -177,10 +447,29 @@ public class Blackjack implements Game {
         currentPlayerIdx = (++currentPlayerIdx) % players.size();
     }
     
+    /**
+     * Moves the turn on from a finished hand, to the next hand split by the current player if any or else to the
+     * next player. A split hand gets its second card when its turn comes, and split aces stand on it.
+     */
+    private void nextTurn() {
+        BlackjackPlayer player = currentPlayer();
+        while (player.nextHand()) {
+            player.addCard(draw(currentPlayerIdx));
+            Operator.PLAYER.setPlayerState(player, false);
+            if (player.getState() == PlayerState.INPLAY && player.getHand().rankAt(0) == Rank.ACE) {
+                player.setState(PlayerState.STAND_DOWN);
+            }
+            if (player.getState() == PlayerState.INPLAY) {
+                return;
+            }
+        }
+        cycle();
+    }
+    
     /**
      * State machine for the actions and their behaviors available in the game.
      */
-    enum Action {
+    public enum Action {
         /**
          * Action to add a card to the player's hand.
          */
@@ -190,10 +479,10 @@ public class Blackjack implements Game {
                 GameState stateAfterHit = Operator.valueOf(
                                 game.currentPlayer().getType()).operate(game);
                 
-                // Goto the next player if the game is in play and the player state in not in play
+                // Goto the next hand or player if the game is in play and the player state in not in play
                 if ((stateAfterHit == GameState.INPLAY)
                         && (game.currentPlayer().getState() != PlayerState.INPLAY)) {
-                    game.cycle();
+                    game.nextTurn();
                     
                     // If it is dealer's turn auto hit till allowed
                     if (game.currentPlayer() == game.dealer()) {
@@ -211,8 +500,8 @@ public class Blackjack implements Game {
             @Override
             public GameState perform(Blackjack game, int[] params) {
                 game.currentPlayer().setState(PlayerState.STAND_DOWN);
-                // Goto the next player
-                game.cycle();
+                // Goto the next hand or player
+                game.nextTurn();
                 
                 // If it is dealer's turn auto hit
                 if (game.currentPlayer() == game.dealer()) {
@@ -224,11 +513,35 @@ public class Blackjack implements Game {
         },
         /**
          * Action to split the hand of same value cards.
+         * <p>
+         * The second card moves to a new hand with the same bet, played after the other hands of the player. The
+         * hand in play gets a new second card right away.
          */
         SPLIT ("SPLIT") {
             @Override
             public GameState perform(Blackjack game, int[] params) {
-                throw new UnsupportedOperationException("Split operation not yet supported");
+                BlackjackPlayer player = game.currentPlayer();
+                if (player == game.dealer() || player.getState() != PlayerState.INPLAY || !player.canSplit()) {
+                    throw new IllegalStateException("The hand of " + player.getName() + " can not be split");
+                }
+                player.split();
+                player.addCard(game.draw(game.currentPlayerIdx));
+                Operator.PLAYER.setPlayerState(player, false);
+                
+                // Split aces take a single card
+                if (player.getState() == PlayerState.INPLAY && player.getHand().rankAt(0) == Rank.ACE) {
+                    player.setState(PlayerState.STAND_DOWN);
+                }
+                if (player.getState() == PlayerState.INPLAY) {
+                    return GameState.INPLAY;
+                }
+                game.nextTurn();
+                
+                // If it is dealer's turn auto hit
+                if (game.currentPlayer() == game.dealer()) {
+                    return HIT.perform(game, params);
+                }
+                return GameState.INPLAY;
             }   
         },
         /**
@@ -237,6 +550,9 @@ public class Blackjack implements Game {
         DOUBLEDOWN ("DOUBLEDOWN"){
             @Override
             public GameState perform(Blackjack game, int[] params) {
+                if (!game.currentPlayer().canDoubleDown()) {
+                    throw new IllegalStateException("The hand of " + game.currentPlayer().getName() + " can not be doubled down");
+                }
                 game.currentPlayer().doubleBet();
                 game.currentPlayer().setState(PlayerState.DOUBLE_DOWN);
                 // Need a single hit
@@ -251,7 +567,9 @@ public class Blackjack implements Game {
         DEAL ("DEAL <bets>") {
             @Override
             public GameState perform(Blackjack game, int[] bets) {
-                game.deck = new Deck(game.numDecks);
+                if (game.deck.beginRound() && TableMetrics.ENABLED) {
+                    TableMetrics.getInstance().reshuffled();
+                }
                 game.currentPlayerIdx = 0;
                 game.dealer().setStateVisible(false);
 
@@ -271,13 +589,13 @@ public class Blackjack implements Game {
                     for (int playerIdx = 0; playerIdx < game.players.size(); playerIdx++) {
                         BlackjackPlayer player = game.players.get(playerIdx);
                         
-                        Card card = game.deck.popCard();
-                        player.getHand().addCard(card);
+                        player.addCard(game.draw(playerIdx));
                         
                         // After dealing of the second card, update the player state
                         if (idx == 1) {
+                            // The hole card of the dealer is dealt face down
                             if (playerIdx == 0) {
-                                card.setVisible(true);
+                                player.getHand().setFaceUp(idx, false);
                             }
                             Operator.valueOf(player.getType()).setPlayerState(player, true);
                         }
@@ -285,7 +603,7 @@ public class Blackjack implements Game {
                 }
                 
                 // If all players other than Dealer are BLACKJACK then dealer auto hits
-                if (Iterables.getLast(Operator.rules()).match(game)) {
+                if (game.allPlayers(PlayerState.BLACKJACK)) {
                     // Dealer's turn auto hit till allowed
                     game.currentPlayerIdx = 0;
                     return HIT.perform(game, bets);
@@ -311,11 +629,36 @@ public class Blackjack implements Game {
             }
         };
         
+        private static final Action[] OPCODES = values();
+        
         private String usage;
 
         Action(String usage) {
             this.usage = usage;
         }
+        
+        /**
+         * The action of the given opcode.
+         * 
+         * @param opcode the opcode
+         * @return      the action
+         */
+        public static Action fromOpcode(int opcode) {
+            if (opcode < 0 || opcode >= OPCODES.length) {
+                throw new IllegalArgumentException("Invalid action opcode : " + opcode);
+            }
+            return OPCODES[opcode];
+        }
+        
+        /**
+         * Stable small integer identifying the action, also its bit in {@link GameState#getActionMask()}.
+         * 
+         * @return      the opcode
+         */
+        public int getOpcode() {
+            return ordinal();
+        }
+        
         /**
          * Indicates the number of parameters expected.
          * 
@@ -346,27 +689,20 @@ public class Blackjack implements Game {
             @Override
             public GameState operate(final Blackjack game) {
                 // Set the visibility to the hidden card of the dealer
-                Iterables.getLast(game.dealer().getHand().getCards()).setVisible(true);
+                Hand hand = game.dealer().getHand();
+                hand.setFaceUp(hand.size() - 1, true);
                 
                 // Set visible the state
                 game.dealer().setStateVisible(true);
 
                 // Hit until hard or soft stand
-                while ((HARD_STAND && game.dealer().value() < 17)
-                        || (!HARD_STAND && game.dealer().softValue() <= 17)) {
-                    game.dealer().getHand().addCard(game.deck.popCard());
+                while (game.rules.dealerHits(game.dealer().value(), game.dealer().softValue())) {
+                    game.dealer().addCard(game.draw(0));
                 }
                 // Update the state
                 setPlayerState(game.currentPlayer(), false);
                 
-                // Apply filters to determine game state
-                for (Rule rule : Iterables.skip(rules(), 1)) {
-                    if (rule.match(game)) {
-                        return rule.apply(game);
-                    }
-                }
-                // Dealer wins as all the above rules are not applicable
-                return GameState.WIN.setState(game, Iterables.limit(game.players, 1));
+                return game.settle();
             }
 
         },
@@ -376,15 +712,17 @@ public class Blackjack implements Game {
                 if (game.currentPlayer().getState() != PlayerState.BLACKJACK
                                 && game.currentPlayer().getState() != PlayerState.NON_BLACKJACK_21) {
                     // Add a new card
-                    Card card = game.deck.popCard();
-                    game.currentPlayer().getHand().addCard(card);
+                    game.currentPlayer().addCard(game.draw(game.currentPlayerIdx));
                     
                     // Update the state
                     setPlayerState(game.currentPlayer(), false);
                 }
                 
-                // Apply busted rule
-                return rules().get(0).apply(game);
+                // Dealer wins without playing if all the hands of the players busted
+                if (game.allPlayers(PlayerState.BUST)) {
+                    return game.settle();
+                }
+                return GameState.INPLAY;
             }
 
         };
@@ -408,385 +746,232 @@ public class Blackjack implements Game {
             }
         } 
 
-        /** Ordered list of all the applicable rules. **/
-        static List<Rule> rules() {
-            return Lists.newArrayList(
-                            Rule.BUST,
-                            Rule.DEALER_BUST,
-                            Rule.BLACKJACK_WIN,
-                            Rule.BLACKJACK_PUSH,
-                            Rule.NON_BLACKJACK_21_WIN,
-                            Rule.NON_BLACKJACK_21_PUSH,
-                            Rule.GREATER,
-                            Rule.EQUAL,
-                            Rule.ALL_PLAYER_BLACKJACK);
-        }
-        
         abstract GameState operate(Blackjack blackjack);
     }
     
     /**
      * Defines the game state 
      */
-    enum GameState {
+    public enum GameState {
         /**
          * The game finished with some player/dealer winning.
          */
-        WIN {
-            @Override
-            GameState setState(Blackjack game, Iterable<BlackjackPlayer> winners) {
-                List<BlackjackPlayer> updatedWinners = Lists.newArrayList(Iterables.transform(winners, 
-                        new Function<BlackjackPlayer, BlackjackPlayer>() {
-        
-                            @Override
-                            public BlackjackPlayer apply(BlackjackPlayer player) {
-                                double factor = 1;
-        
-                                if (player.getState() == PlayerState.BLACKJACK) {
-                                    factor = BLACKJACK_WIN_FACTOR;
-                                }
-                                player.setChips((double) player.getChips() + 
-                                        (double) factor * player.getBet());
-                                if (player.getState() != PlayerState.BLACKJACK) {
-                                    player.setState(PlayerState.WIN);
-                                }
-                                
-                                if (!player.isStateVisible()) {
-                                    player.setStateVisible(true);
-                                }
-                                return player;
-                            }
-                        }));
-                @SuppressWarnings("unused")
-                Iterable<BlackjackPlayer> loosers =
-                        setLooserState(Iterables.filter(game.players, Predicates.not(
-                                            Predicates.in(updatedWinners))));
-                return this;
-            }
-
-            @Override
-            List<Action> getActions() {
-                return Lists.newArrayList(Action.DEAL, Action.RESET);
-            }
-        }, 
+        WIN(Action.DEAL, Action.RESET), 
         /**
-         * The game finished with some players being equal
+         * The game finished with all the players being equal to the dealer.
          */
-        PUSH {
-            @Override
-            GameState setState(Blackjack game, Iterable<BlackjackPlayer> winners) {                
-                List<BlackjackPlayer> updatedPushers = Lists.newArrayList(Iterables.transform(winners, 
-                        new Function<BlackjackPlayer, BlackjackPlayer>() {
-
-                            @Override
-                            public BlackjackPlayer apply(BlackjackPlayer player) {
-                                player.setState(PlayerState.PUSH);
-                                
-                                if (!player.isStateVisible()) {
-                                    player.setStateVisible(true);
-                                }                                
-                                return player;
-                            }
-                        }));
-                @SuppressWarnings("unused")
-                Iterable<BlackjackPlayer> loosers =
-                    setLooserState(Iterables.filter(game.players, Predicates.not(
-                            Predicates.in(updatedPushers))));
-                return this;
-            }
-
-            @Override
-            List<Action> getActions() {
-                return Lists.newArrayList(Action.DEAL, Action.RESET);
-            }
-        },
+        PUSH(Action.DEAL, Action.RESET),
         /**
          * Game is in progress.
          */
-        INPLAY {
-            @Override
-            GameState setState(Blackjack game, Iterable<BlackjackPlayer> players) {
-                return this;
-            }
-
-            @Override
-            List<Action> getActions() {
-                return Lists.newArrayList(Action.HIT, Action.STAND, Action.DOUBLEDOWN, Action.SPLIT);
-            }
-        },
+        INPLAY(Action.HIT, Action.STAND, Action.DOUBLEDOWN, Action.SPLIT),
         /**
          * Game Initialized.
          */
-        START {
-            @Override
-            GameState setState(Blackjack game, Iterable<BlackjackPlayer> players) {
-                return this;
-            }
-
-            @Override
-            List<Action> getActions() {
-                return Lists.newArrayList(Action.DEAL);
-            }
-        };
+        START(Action.DEAL);
         
-        Iterable<BlackjackPlayer> setLooserState(Iterable<BlackjackPlayer> loosers) {
-            return Lists.newArrayList(Iterables.transform(loosers, 
-                    new Function<BlackjackPlayer, BlackjackPlayer>() {
-
-                        @Override
-                        public BlackjackPlayer apply(BlackjackPlayer player) {
-                            player.setChips((double) player.getChips() - (double) player.getBet());
-                            if (player.getState() != PlayerState.BUST) {
-                                player.setState(PlayerState.LOOSE);
-                            }
-                            
-                            if (!player.isStateVisible()) {
-                                player.setStateVisible(true);
-                            }                            
-                            return player;
-                        }
-                    }));            
+        private final List<Action> actions;
+        
+        private final Set<Action> legalActions;
+        
+        private final int actionMask;
+        
+        GameState(Action... actions) {
+            this.actions = ImmutableList.copyOf(actions);
+            this.legalActions = Sets.immutableEnumSet(this.actions);
+            int mask = 0;
+            for (Action action : actions) {
+                mask |= 1 << action.getOpcode();
+            }
+            this.actionMask = mask;
         }
-        abstract GameState setState(Blackjack game, Iterable<BlackjackPlayer> players);
         
-        abstract List<Action> getActions();
-    }
-    
-    /**
-     * Interface for all rules for deciding the outcome of the game.
-     * <p>
-     * Contains default implementations of all the rules exposed as instance variables.
-     * This allows implementation rules inherit from other rules if needed to reuse code.
-     * Also, keeps the rules encapsulated at one place. For a description of the rules
-     * @see http://en.wikipedia.org/wiki/Blackjack
-     */
-    interface Rule {
         /**
+         * The actions applicable in the state, in the order they are offered.
          * 
-         * @param game the current game instance
-         * @return      whether the current rule applies
+         * @return      the actions, shared and immutable
          */
-        boolean match(Blackjack game);
+        List<Action> getActions() {
+            return actions;
+        }
         
         /**
-         * Applies this rule. This call should be preceded by a call to {@link #match(Blackjack)}
-         * 
-         * @param game the current game instance
-         * @return      the state of the game after applying the rule
+         * @return      the actions applicable in the state, shared and immutable
          */
-        GameState apply(Blackjack game);
-
+        public Set<Action> getLegalActions() {
+            return legalActions;
+        }
+        
         /**
-         * Default implementation Rule for player 'Bust'.
+         * The actions applicable in the state as a bitmask, with the bit at the opcode of each action set.
+         * 
+         * @return      the bitmask
          */
-        static class BustRule implements Rule {
-            Predicate<BlackjackPlayer> predicate = new Predicate<BlackjackPlayer>() {
-
-                @Override
-                public boolean apply(BlackjackPlayer player) {
-                    return player.getState() == PlayerState.BUST;
-                }
-            };
-            
-            @Override
-            public boolean match(Blackjack game) {
-                return Iterables.any(Iterables.skip(game.players, 1), predicate);
-            }
-
-            @Override
-            public GameState apply(Blackjack game) {
-                Iterable<BlackjackPlayer> unbusted = Iterables.filter(game.players, Predicates.not(predicate));
-                if (Iterables.size(unbusted) == 1) {
-                    return GameState.WIN.setState(game, unbusted);
-                }
-                return GameState.INPLAY;
-            }
+        public int getActionMask() {
+            return actionMask;
         }
         
+        public boolean allows(Action action) {
+            return (actionMask & (1 << action.getOpcode())) != 0;
+        }
+    }
+    
+    /**
+     * Rules deciding the outcome of a player's hand against the dealer's at the end of the round.
+     * <p>
+     * {@link #settle(PlayerState, int, PlayerState, int)} picks the rule applicable to a hand, which decides
+     * whether the player wins, pushes or looses. For a description of the rules
+     * @see http://en.wikipedia.org/wiki/Blackjack
+     */
+    public enum Rule {
+        /** Player busted and looses whatever the dealer's hand */
+        BUST(-1),
+        /** Player with a 'Blackjack' against a dealer without one wins with the blackjack win factor */
+        BLACKJACK_WIN(1) {
+            @Override
+            double payout(TableRules rules) {
+                return rules.getBlackjackWinFactor();
+            }
+        },
+        /** Player and dealer both have a 'Blackjack' */
+        BLACKJACK_PUSH(0),
+        /** Dealer has a 'Blackjack' and the player does not */
+        DEALER_BLACKJACK(-1),
+        /** Dealer busted and the player standing wins */
+        DEALER_BUST(1),
+        /** Player with a non-blackjack 21 against a dealer under 21 */
+        NON_BLACKJACK_21_WIN(1),
+        /** Player and dealer both have a non-blackjack 21 */
+        NON_BLACKJACK_21_PUSH(0),
+        /** Player's hand is greater than the dealer's */
+        GREATER(1),
+        /** Player's hand is equal to the dealer's */
+        EQUAL(0),
+        /** Dealer's hand is greater than the player's */
+        LESS(-1);
+        
         /**
-         * Default implementation Rule for Dealer 'Bust'
+         * 1 if the player wins, 0 for a push and -1 if the player looses.
          */
-        static class DealerBustRule extends BustRule {
-            @Override
-            public boolean match(Blackjack game) {
-                return (game.dealer().getState() == PlayerState.BUST);
-            }      
+        private final int outcome;
+        
+        Rule(int outcome) {
+            this.outcome = outcome;
+        }
+        
+        public int getOutcome() {
+            return outcome;
         }
         
         /**
-         * Default implementation Rule identifying player (including dealer) with a Blackjack 'Win'.
+         * The factor of the bet paid to (positive) or taken from (negative) the player.
+         * 
+         * @param rules the rules of the table
+         * @return      the factor
          */
-        static class BlackjackWinRule implements Rule {
-            Predicate<BlackjackPlayer> predicate = new Predicate<BlackjackPlayer>() {
-
-                @Override
-                public boolean apply(BlackjackPlayer player) {
-                    return player.getState() == PlayerState.BLACKJACK;
-                }
-                
-            };
-            
-            @Override
-            public boolean match(Blackjack game) {
-                return Iterables.size(Iterables.filter(game.players, predicate)) == 1;
-            }
-
-            @Override
-            public GameState apply(Blackjack game) {
-                return GameState.WIN.setState(game, Iterables.filter(game.players, predicate));
-            }
-            
+        double payout(TableRules rules) {
+            return outcome;
         }
         
         /**
-         * Default implementation Rule identifying multiple players with Blackjack for a 'Push'.
+         * Picks the rule applicable to a hand.
+         * 
+         * @param state the state of the hand, done with the round
+         * @param value the best value of the hand
+         * @param dealerState the state of the dealer
+         * @param dealerValue the best value of the dealer's hand
+         * @return      the rule
          */
-        static class BlackjackPushRule extends BlackjackWinRule {
-
-            @Override
-            public boolean match(Blackjack game) {
-                return Iterables.size(Iterables.filter(game.players, predicate)) > 1;
+        static Rule settle(PlayerState state, int value, PlayerState dealerState, int dealerValue) {
+            if (state == PlayerState.BUST) {
+                return BUST;
             }
-            
-            @Override
-            public GameState apply(Blackjack game) {
-                return GameState.PUSH.setState(game, Iterables.filter(game.players, predicate));
+            if (state == PlayerState.BLACKJACK) {
+                return (dealerState == PlayerState.BLACKJACK) ? BLACKJACK_PUSH : BLACKJACK_WIN;
             }
-        }
-        /**
-         * Default implementation Rule identifying all players without dealer with Blackjack.
-         */
-        static class AllPlayerBlackjackRule extends BlackjackWinRule {
-
-            @Override
-            public boolean match(Blackjack game) {
-                return Iterables.size(
-                        Iterables.filter(
-                                Iterables.skip(game.players, 1), predicate)) 
-                                    == (game.players.size() - 1);
+            if (dealerState == PlayerState.BLACKJACK) {
+                return DEALER_BLACKJACK;
             }
-            
-            @Override
-            public GameState apply(Blackjack game) {
-                return GameState.PUSH.setState(game, Iterables.filter(
-                                        Iterables.skip(game.players, 1), predicate));
+            if (dealerState == PlayerState.BUST) {
+                return DEALER_BUST;
             }
-        }
-
-        /**
-         * Default implementation Rule identifying player with a Non-Blackjack 21 'Win'. 
-         */
-        static class NonBlackjack21WinRule implements Rule {
-            Predicate<BlackjackPlayer> predicate = new Predicate<BlackjackPlayer>() {
-
-                @Override
-                public boolean apply(BlackjackPlayer player) {
-                    return player.getState() == PlayerState.NON_BLACKJACK_21;
-                }
-                
-            };
-            
-            @Override
-            public boolean match(Blackjack game) {
-                return Iterables.size(Iterables.filter(game.players, predicate)) == 1;
+            if (state == PlayerState.NON_BLACKJACK_21) {
+                return (dealerValue == 21) ? NON_BLACKJACK_21_PUSH : NON_BLACKJACK_21_WIN;
             }
-
-            @Override
-            public GameState apply(Blackjack game) {
-                return GameState.WIN.setState(game, Iterables.filter(game.players, predicate));
+            if (value > dealerValue) {
+                return GREATER;
             }
-            
+            return (value == dealerValue) ? EQUAL : LESS;
         }
-        
-        /**
-         * Default implementation Rule identifying all players with a Non-Blackjack 21 for a 'Push'.
-         */
-        static class NonBlackjack21PushRule extends NonBlackjack21WinRule {
-
-            @Override
-            public boolean match(Blackjack game) {
-                return Iterables.size(Iterables.filter(game.players, predicate)) > 1;
-            }
-            
-            @Override
-            public GameState apply(Blackjack game) {
-                return GameState.PUSH.setState(game, Iterables.filter(game.players, predicate));
-            }        
+    }
+    
+    /**
+     * Settles the round in a single pass over the seats. Each hand is classified against the dealer once from the
+     * state and total held in the {@link SeatStore}, and the chips of the seat and state of the hand are updated in
+     * place.
+     * 
+     * @return      {@link GameState#PUSH} if all the players pushed, {@link GameState#WIN} otherwise
+     */
+    GameState settle() {
+        BlackjackPlayer dealer = dealer();
+        PlayerState dealerState = dealer.getState();
+        int dealerValue = dealer.softValue();
+        if (dealerState == PlayerState.INPLAY) {
+            dealer.setState(PlayerState.STAND_DOWN);
         }
-        
-        /**
-         * Default implementation Rule identifying all players with hand greater than the dealer for a 'Win'.
-         */
-        static class GreaterThanDealerRule implements Rule {
-            @Override
-            public boolean match(final Blackjack game) {
-                return (Iterables.any(Iterables.skip(game.players, 1), 
-                        new Predicate<BlackjackPlayer>() {
-                            @Override
-                            public boolean apply(BlackjackPlayer player) {
-                                return Math.max(player.value(), player.softValue()) 
-                                        > Math.max(game.dealer().softValue(), game.dealer().value());
-                            }
-                        }));
-            }
-
-            @Override
-            public GameState apply(final Blackjack game) {
-                return GameState.WIN.setState(game,
-                            Iterables.filter(
-                                    Iterables.skip(game.players, 1),  
-                                    new Predicate<BlackjackPlayer>() {
-                                        @Override
-                                        public boolean apply(BlackjackPlayer player) {
-                                            return Math.max(player.value(), player.softValue()) 
-                                                    > Math.max(game.dealer().softValue(), game.dealer().value());
-                                        }
-                                    }));
-            }
+        dealer.setStateVisible(true);
+        // The hole card is shown even if the round ended before the dealer's turn
+        if (dealer.getHand().size() > 1) {
+            dealer.getHand().setFaceUp(1, true);
         }
         
-        /**
-         * Default implementation Rule identifying all players with hand equal to the dealer for a 'Push.
-         */
-        static class EqualToDealerRule extends GreaterThanDealerRule {
-            @Override
-            public boolean match(final Blackjack game) {
-                return (Iterables.any(Iterables.skip(game.players, 1), 
-                        new Predicate<BlackjackPlayer>() {
-                            @Override
-                            public boolean apply(BlackjackPlayer player) {
-                                return Math.max(player.value(), player.softValue()) 
-                                        == Math.max(game.dealer().softValue(), game.dealer().value());
-                            }
-                        }));
-            }
-
-            @Override
-            public GameState apply(final Blackjack game) {
-                return GameState.PUSH.setState(game,
-                            Iterables.filter(
-                                    game.players,  
-                                        new Predicate<BlackjackPlayer>() {
-                                            @Override
-                                            public boolean apply(BlackjackPlayer player) {
-                                                return Math.max(player.value(), player.softValue()) 
-                                                        == Math.max(game.dealer().softValue(), game.dealer().value());
-                                            }
-                                        }));
+        boolean allPush = true;
+        for (int seat = 1; seat < seats.getSeats(); seat++) {
+            double chips = seats.getChips(seat);
+            int firstSlot = seats.slot(seat, 0);
+            int endSlot = firstSlot + seats.getHandCount(seat);
+            for (int slot = firstSlot; slot < endSlot; slot++) {
+                PlayerState state = seats.getState(slot);
+                Rule rule = Rule.settle(state, seats.getTotal(slot), dealerState, dealerValue);
+                seats.setRule(slot, rule);
+                if (journal != null) {
+                    journal.settle(seat, rule);
+                }
+                if (TableMetrics.ENABLED) {
+                    TableMetrics.getInstance().settled(rule);
+                }
+                chips += payouts[rule.ordinal()] * seats.getBet(slot);
+                
+                if (rule.getOutcome() > 0) {
+                    if (state != PlayerState.BLACKJACK) {
+                        seats.setState(slot, PlayerState.WIN);
+                    }
+                    allPush = false;
+                } else if (rule.getOutcome() == 0) {
+                    seats.setState(slot, PlayerState.PUSH);
+                } else {
+                    if (state != PlayerState.BUST) {
+                        seats.setState(slot, PlayerState.LOOSE);
+                    }
+                    allPush = false;
+                }
             }
+            seats.setChips(seat, chips);
+            seats.setActiveHand(seat, 0);
+            seats.setStateVisible(seat, true);
         }
-
-        Rule BUST = new BustRule();
-        Rule DEALER_BUST = new DealerBustRule();
-        Rule BLACKJACK_WIN = new BlackjackWinRule();
-        Rule BLACKJACK_PUSH = new BlackjackPushRule();
-        Rule NON_BLACKJACK_21_WIN = new NonBlackjack21WinRule();
-        Rule NON_BLACKJACK_21_PUSH = new NonBlackjack21PushRule();
-        Rule GREATER = new GreaterThanDealerRule();
-        Rule EQUAL = new EqualToDealerRule();
-        Rule ALL_PLAYER_BLACKJACK = new AllPlayerBlackjackRule();
+        return allPush ? GameState.PUSH : GameState.WIN;
     }
     
+    /**
+     * Checks if all the hands of the players other than the dealer have the given state.
+     * 
+     * @param state the state to check
+     * @return      true if all the hands have the state
+     */
+    private boolean allPlayers(PlayerState state) {
+        return seats.allHands(1, state);
+    }
 
     @Override
     public String toString() {
@@ -2,44 +2,292 @@ package cards.blackjack;
 
 import java.io.StringWriter;
 
-import cards.common.Card;
 import cards.common.Game;
 import cards.common.Hand;
 import cards.common.Player;
 import cards.common.Rank;
+import cards.common.RankValue;
 import cards.common.Visitor;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
-
 /**
  * An extension of the common card {@link Player} providing {@link Blackjack} specific functionality.
+ * <p>
+ * A player splitting pairs holds several hands in a round, each with its own state, bet and settling rule. The
+ * hands are played one at a time and the getters without a hand index, including {@link #getHand()}, are for the
+ * hand in play. The hands come from a pool kept from round to round, so splitting does not allocate once the pool
+ * has grown to the most hands held.
+ * <p>
+ * The player is a view over a seat of the {@link SeatStore} of its table, which holds the chips and the state of
+ * the hands of all the seats. A player created on its own has a store with a single seat.
  */
 public class BlackjackPlayer extends Player {
-    private PlayerState state;
+    private static final PlayerState[] STATES = PlayerState.values();
+    
+    private static final Blackjack.Rule[] RULES = Blackjack.Rule.values();
     
     private String type;
     
-    private boolean stateVisible = true;
+    private final TableRules rules;
+    
+    private final SeatStore store;
+    
+    private final int seat;
+    
+    /**
+     * Slot of the first hand of the seat in the store.
+     */
+    private final int firstSlot;
     
     public BlackjackPlayer() {
+        this(TableRules.BLACKJACK_RANK_VALUE);
+    }
+    
+    /**
+     * @param rankValue the values of the cards at the table
+     */
+    public BlackjackPlayer(RankValue rankValue) {
+        this(TableRules.builder().rankValue(rankValue).build());
+    }
+    
+    /**
+     * @param rules the rules of the table, deciding the values of the cards and how pairs can be split
+     */
+    public BlackjackPlayer(TableRules rules) {
+        this(new SeatStore(rules, 1), 0);
+    }
+    
+    /**
+     * @param store the seats of the table
+     * @param seat the seat of the player, the dealer being 0
+     */
+    BlackjackPlayer(SeatStore store, int seat) {
+        // The hands, bets and chips are held by the store
+        super((Hand) null);
+        this.rules = store.getRules();
+        this.store = store;
+        this.seat = seat;
+        this.firstSlot = store.slot(seat, 0);
         init();
     }
     
     /**
-     * Initialize the players state
+     * Initialize the players state, keeping a single hand
      */
     void init() {
-        setHand(new Hand());
+        for (int idx = 0; idx < getHandCount(); idx++) {
+            store.hand(firstSlot + idx).clear();
+        }
+        store.setHandCount(seat, 1);
+        store.setActiveHand(seat, 0);
+        store.updateTotal(firstSlot);
         setState(PlayerState.INPLAY);
+        setRule(null);
+    }
+    
+    int getSeat() {
+        return seat;
+    }
+    
+    private int activeSlot() {
+        return firstSlot + store.getActiveHand(seat);
+    }
+    
+    /* Hands */
+    
+    @Override
+    public Hand getHand() {
+        return store.hand(activeSlot());
+    }
+    
+    @Override
+    public BlackjackPlayer setHand(Hand hand) {
+        store.setHand(activeSlot(), hand);
+        return this;
+    }
+    
+    public Hand getHand(int hand) {
+        return store.hand(firstSlot + checkHand(hand));
+    }
+    
+    /**
+     * Adds a card dealt by the game to the hand in play, keeping the total of the hand in the store up to date.
+     * 
+     * @param code the card code
+     */
+    void addCard(int code) {
+        int slot = activeSlot();
+        store.hand(slot).addCard(code);
+        store.updateTotal(slot);
+    }
+    
+    /**
+     * Number of hands held in the round, more than one once a pair is split.
+     * 
+     * @return      the number of hands
+     */
+    public int getHandCount() {
+        return store.getHandCount(seat);
+    }
+    
+    /**
+     * Index of the hand in play, or being looked at after the round.
+     * 
+     * @return      the index of the hand
+     */
+    public int getActiveHand() {
+        return store.getActiveHand(seat);
+    }
+    
+    public boolean isSplit() {
+        return getHandCount() > 1;
+    }
+    
+    /**
+     * Moves on to the next of the hands split.
+     * 
+     * @return      false if the hand in play was the last one
+     */
+    boolean nextHand() {
+        int next = getActiveHand() + 1;
+        if (next < getHandCount()) {
+            store.setActiveHand(seat, next);
+            return true;
+        }
+        return false;
+    }
+    
+    BlackjackPlayer selectHand(int hand) {
+        store.setActiveHand(seat, checkHand(hand));
+        return this;
+    }
+    
+    /**
+     * Splits the pair in play, moving the second card to a new hand with the same bet played after the others.
+     * Neither hand gets its second card.
+     */
+    void split() {
+        int slot = activeSlot();
+        Hand hand = store.hand(slot);
+        int first = hand.cardAt(0);
+        int second = hand.cardAt(1);
+        hand.clear().addCard(first);
+        store.updateTotal(slot);
+        
+        int handCount = getHandCount();
+        int newSlot = firstSlot + handCount;
+        store.hand(newSlot).clear().addCard(second);
+        store.updateTotal(newSlot);
+        store.setState(newSlot, PlayerState.INPLAY);
+        store.setBet(newSlot, store.getBet(slot));
+        store.setRule(newSlot, null);
+        store.setHandCount(seat, handCount + 1);
     }
+    
+    /**
+     * Whether all the hands held have the state.
+     * 
+     * @param state the state
+     * @return      true if all the hands have the state
+     */
+    boolean allHands(PlayerState state) {
+        for (int idx = 0; idx < getHandCount(); idx++) {
+            if (store.getState(firstSlot + idx) != state) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Saves the chips and the hands with their state.
+     * 
+     * @param snapshot the snapshot of the table
+     */
+    void save(TableSnapshot snapshot) {
+        snapshot.putDouble(getChips());
+        snapshot.putInt(getHandCount());
+        snapshot.putInt(getActiveHand());
+        snapshot.putInt(isStateVisible() ? 1 : 0);
+        for (int idx = 0; idx < getHandCount(); idx++) {
+            int slot = firstSlot + idx;
+            Blackjack.Rule rule = store.getRule(slot);
+            snapshot.putInt(store.getBet(slot));
+            snapshot.putInt(store.getState(slot).ordinal());
+            snapshot.putInt((rule == null) ? -1 : rule.ordinal());
+            snapshot.putHand(store.hand(slot));
+        }
+    }
+    
+    /**
+     * Restores the state saved by {@link #save(TableSnapshot)}, taking the hands from the pool.
+     * 
+     * @param snapshot the snapshot of the table
+     */
+    void restore(TableSnapshot snapshot) {
+        setChips(snapshot.getDouble());
+        int count = snapshot.getInt();
+        if (count > store.getMaxHands()) {
+            throw new IllegalArgumentException("The snapshot holds more hands than allowed : " + count);
+        }
+        store.setHandCount(seat, count);
+        store.setActiveHand(seat, snapshot.getInt());
+        setStateVisible(snapshot.getInt() != 0);
+        for (int idx = 0; idx < count; idx++) {
+            int slot = firstSlot + idx;
+            store.setBet(slot, snapshot.getInt());
+            store.setState(slot, STATES[snapshot.getInt()]);
+            int rule = snapshot.getInt();
+            store.setRule(slot, (rule < 0) ? null : RULES[rule]);
+            snapshot.getHand(store.hand(slot));
+            store.updateTotal(slot);
+        }
+    }
+    
+    private int checkHand(int hand) {
+        if (hand < 0 || hand >= getHandCount()) {
+            throw new IndexOutOfBoundsException("No hand " + hand + " of " + getHandCount());
+        }
+        return hand;
+    }
+    
+    /* State, bet and rule of the hand in play */
 
     public PlayerState getState() {
-        return state;
+        return store.getState(activeSlot());
+    }
+
+    public PlayerState getState(int hand) {
+        return store.getState(firstSlot + checkHand(hand));
     }
 
     BlackjackPlayer setState(PlayerState state) {
-        this.state = state;
+        store.setState(activeSlot(), state);
+        return this;
+    }
+    
+    @Override
+    public int getBet() {
+        return store.getBet(activeSlot());
+    }
+    
+    public int getBet(int hand) {
+        return store.getBet(firstSlot + checkHand(hand));
+    }
+    
+    @Override
+    public BlackjackPlayer setBet(int bet) {
+        store.setBet(activeSlot(), bet);
+        return this;
+    }
+    
+    @Override
+    public double getChips() {
+        return store.getChips(seat);
+    }
+    
+    @Override
+    public BlackjackPlayer setChips(double chips) {
+        store.setChips(seat, chips);
         return this;
     }
     
@@ -52,12 +300,30 @@ public class BlackjackPlayer extends Player {
         return this;
     }
 
+    /**
+     * The rule the hand was settled by.
+     * 
+     * @return      the rule or null if the round is not settled
+     */
+    public Blackjack.Rule getRule() {
+        return store.getRule(activeSlot());
+    }
+    
+    public Blackjack.Rule getRule(int hand) {
+        return store.getRule(firstSlot + checkHand(hand));
+    }
+
+    BlackjackPlayer setRule(Blackjack.Rule rule) {
+        store.setRule(activeSlot(), rule);
+        return this;
+    }
+
     public boolean isStateVisible() {
-        return stateVisible;
+        return store.isStateVisible(seat);
     }
 
     public void setStateVisible(boolean stateVisible) {
-        this.stateVisible = stateVisible;
+        store.setStateVisible(seat, stateVisible);
     }
 
     /**
@@ -77,24 +343,37 @@ public class BlackjackPlayer extends Player {
      * @return the value
      */
     public int softValue() {
-        int numAces = Iterables.size(Iterables.filter(getHand().getCards(), 
-                                new Predicate<Card>() {
-                        
-                                    @Override
-                                    public boolean apply(Card card) {
-                                        return card.getRank() == Rank.ACE;
-                                    }
-                                    
-                                }));
-        // Gets the max value <= 21
-        int max = value();
-        for (int idx = 0; idx <= numAces; idx++) {
-            int hardAce = idx * 10 + value();
-            if (hardAce <= 21 && hardAce > max) {
-                max = hardAce;
-            }
+        // Only a single ace can ever be counted as 11 without going over 21
+        int value = value();
+        if (getHand().aceCount() > 0 && value + 10 <= 21) {
+            return value + 10;
+        }
+        return value;
+    }
+    
+    /**
+     * Whether the hand in play is a pair which can be split under the rules of the table.
+     * 
+     * @return      true if the hand can be split
+     */
+    public boolean canSplit() {
+        Hand hand = getHand();
+        // A pair is any two cards of the same value, e.g. a king and a ten
+        if (hand.size() != 2 || getHandCount() >= rules.getMaxSplitHands()
+                || hand.value() != 2 * rules.getRankValue().getValue(hand.rankAt(0))) {
+            return false;
         }
-        return max;
+        return hand.rankAt(0) != Rank.ACE || rules.isSplitAces();
+    }
+    
+    /**
+     * Whether the hand in play can be doubled down, only on its first two cards and after a split only if the
+     * rules of the table allow.
+     * 
+     * @return      true if the hand can be doubled down
+     */
+    public boolean canDoubleDown() {
+        return getHand().size() == 2 && (!isSplit() || rules.isDoubleAfterSplit());
     }
     
     public void doubleBet() {
@@ -104,7 +383,7 @@ public class BlackjackPlayer extends Player {
     /**
      * Defines constants for player state.
      */
-    enum PlayerState {
+    public enum PlayerState {
         BLACKJACK, BUST, INPLAY, NON_BLACKJACK_21, DOUBLE_DOWN, STAND_DOWN, LOOSE, PUSH, WIN;
     }
     
@@ -119,7 +398,7 @@ public class BlackjackPlayer extends Player {
         buffer.append(getHand().toString());
         buffer.append("Chips : " + getChips());
         buffer.append("Bet : " + getBet());
-        if (stateVisible) {
+        if (isStateVisible()) {
             buffer.append("State : " + getState());
         }
         
@@ -29,7 +29,7 @@ public class ConsoleGameViewer implements Visitor<List<String>, Blackjack, Black
             }
         }
 
-        rows.add(Strings.repeat(" ", game.dealer().getHand().getCards().size() * 5));
+        rows.add(Strings.repeat(" ", game.dealer().getHand().size() * 5));
         for(Integer idx : multimap.keySet()) {
             rows.add(Joiner.on(Strings.repeat(" ", 20)).join(multimap.get(idx)));
         }
@@ -39,7 +39,19 @@ public class ConsoleGameViewer implements Visitor<List<String>, Blackjack, Black
     @Override
     public List<String> visit(BlackjackPlayer player) {
         List<String> rows = Lists.newArrayList();
-        List<String> hands = player.getHand().accept(this);
+        List<String> hands = player.getHand(0).accept(this);
+        StringBuilder bets = new StringBuilder().append(player.getBet(0));
+        StringBuilder states = new StringBuilder().append(player.getState(0));
+        
+        // The hands split from a pair are printed side by side
+        for (int hand = 1; hand < player.getHandCount(); hand++) {
+            List<String> splitRows = player.getHand(hand).accept(this);
+            for (int idx = 0; idx < hands.size(); idx++) {
+                hands.set(idx, hands.get(idx) + "| " + splitRows.get(idx));
+            }
+            bets.append(", ").append(player.getBet(hand));
+            states.append(", ").append(player.getState(hand));
+        }
         int padLength = (hands.isEmpty() ? 30 : hands.get(0).length());
 
         rows.add(Strings.padEnd(player.getName(), padLength, ' '));
@@ -50,9 +62,9 @@ public class ConsoleGameViewer implements Visitor<List<String>, Blackjack, Black
             rows.add(Strings.padEnd(handRow, padLength, ' '));
         }
         rows.add(Strings.padEnd("Chips : " + player.getChips(), padLength, ' '));
-        rows.add(Strings.padEnd("Bet : " + player.getBet(), padLength, ' '));
+        rows.add(Strings.padEnd("Bet : " + bets, padLength, ' '));
         if (player.isStateVisible()) {
-            rows.add(Strings.padEnd("State : " + player.getState(), padLength, ' '));
+            rows.add(Strings.padEnd("State : " + states, padLength, ' '));
         }
         rows.add(Strings.repeat("-", padLength));
         return rows;    
@@ -66,8 +78,10 @@ public class ConsoleGameViewer implements Visitor<List<String>, Blackjack, Black
         // Now the map contains entries by row for all cards
         ListMultimap<Integer, String> multimap = ArrayListMultimap.create();
         List<Card> cards = hand.getCards();
-        for (Card card : cards) {
-            List<String> cardRows = card.accept(this);
+        for (int card = 0; card < cards.size(); card++) {
+            // The back of a card dealt face down is printed instead of the card
+            List<String> cardRows = 
+                    hand.isFaceUp(card) ? cards.get(card).accept(this) : cards.get(card).prettyPrint(false);
             for (int idx = 0; idx < cardRows.size(); idx++) {
                 multimap.put(idx, cardRows.get(idx));
             }
@@ -82,18 +96,7 @@ public class ConsoleGameViewer implements Visitor<List<String>, Blackjack, Black
 
     @Override
     public List<String> visit(Card card) {
-        List<String> rows = Lists.newArrayList();
-        rows.add("-----");
-        if (card.isVisible()) {
-            rows.add("| " + card.getRank() + " |");
-            rows.add("| " + card.getSuit() + " |");
-        } else {
-            rows.add("- * -");
-            rows.add("- * -");            
-        }
-        rows.add("-----");
-
-        return rows;
+        return card.prettyPrint();
     }
 
 }
@@ -0,0 +1,343 @@
+package cards.blackjack;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import cards.common.Cards;
+import cards.common.Hand;
+import cards.common.Rank;
+import cards.common.Suit;
+
+import com.google.common.base.StandardSystemProperty;
+import com.google.common.base.Strings;
+
+/**
+ * Console renderer of a {@link Blackjack} table, laying out the same frame as the {@link ConsoleGameViewer} without
+ * creating strings for it.
+ * <p>
+ * The rows of the glyphs of the 52 cards and of the back of a card are built once, and each frame is written into a
+ * buffer reused from frame to frame. A renderer is meant to be kept for the life of the console it draws to. When the
+ * terminal understands ANSI escape codes, only the lines which changed since the previous frame are drawn again.
+ * Whether ANSI is used defaults to whether there is a terminal other than a dumb one, and can be forced with the
+ * <code>ansi</code> system property.
+ * <p>
+ * Not thread safe.
+ */
+public class ConsoleRenderer {
+    /**
+     * Whether the console understands ANSI escape codes.
+     */
+    public static final boolean ANSI = Boolean.parseBoolean(System.getProperty("ansi",
+            String.valueOf(System.console() != null && System.getenv("TERM") != null
+                    && !"dumb".equals(System.getenv("TERM")))));
+
+    /**
+     * Width of a card in a hand including the gap to the next card.
+     */
+    private static final int CARD_WIDTH = 7;
+
+    private static final int CARD_ROWS = 4;
+
+    /**
+     * Width of a player without cards.
+     */
+    private static final int EMPTY_WIDTH = 30;
+
+    /**
+     * Gap between the players.
+     */
+    private static final int GAP = 20;
+
+    /**
+     * Separator of the hands split from a pair, printed side by side.
+     */
+    private static final String HAND_SEPARATOR = "| ";
+
+    /**
+     * Rows of the glyphs indexed by the card code, followed by the back of a card.
+     */
+    private static final char[][][] GLYPHS = new char[Cards.DECK_SIZE + 1][][];
+
+    private static final int BACK = Cards.DECK_SIZE;
+
+    private static final String LINE_SEPARATOR = StandardSystemProperty.LINE_SEPARATOR.value();
+
+    private static final String ESCAPE = "\033[";
+
+    static {
+        for (Rank rank : Rank.values()) {
+            for (Suit suit : Suit.values()) {
+                GLYPHS[Cards.encode(rank, suit)] = glyph("| " + rank + " |", "| " + suit + " |");
+            }
+        }
+        GLYPHS[BACK] = glyph("- * -", "- * -");
+    }
+
+    private final boolean ansi;
+
+    /**
+     * Lines of the frame being laid out, each ended by a new line.
+     */
+    private StringBuilder frame = new StringBuilder(1024);
+
+    /**
+     * Offset in the frame of the end of each line.
+     */
+    private int[] lineEnds = new int[64];
+
+    private int lines;
+
+    /**
+     * The frame drawn last, to compare the next one with.
+     */
+    private StringBuilder drawn = new StringBuilder(1024);
+
+    private int[] drawnLineEnds = new int[64];
+
+    /**
+     * Number of lines drawn last, -1 if nothing was drawn yet.
+     */
+    private int drawnLines = -1;
+
+    /**
+     * Text sent to the console by a draw.
+     */
+    private final StringBuilder output = new StringBuilder(1024);
+
+    private char[] chars = new char[1024];
+
+    public ConsoleRenderer() {
+        this(ANSI);
+    }
+
+    /**
+     * @param ansi whether to redraw only the lines changed with ANSI escape codes
+     */
+    public ConsoleRenderer(boolean ansi) {
+        this.ansi = ansi;
+    }
+
+    private static char[][] glyph(String rank, String suit) {
+        String[] rows = {"-----", rank, suit, "-----"};
+        char[][] glyph = new char[CARD_ROWS][];
+        for (int row = 0; row < CARD_ROWS; row++) {
+            glyph[row] = Strings.padEnd(rows[row], CARD_WIDTH, ' ').substring(0, CARD_WIDTH).toCharArray();
+        }
+        return glyph;
+    }
+
+    /**
+     * Starts a new frame with the table in it.
+     *
+     * @param game the game
+     * @return      this renderer
+     */
+    public ConsoleRenderer render(Blackjack game) {
+        frame.setLength(0);
+        lines = 0;
+
+        BlackjackPlayer dealer = game.dealer();
+        for (int row = 0; row < rows(dealer); row++) {
+            appendRow(dealer, row);
+            endLine();
+        }
+
+        appendRepeated(' ', dealer.getHand().size() * 5);
+        endLine();
+
+        // Players are laid out side by side, joining the rows they have at each index
+        List<BlackjackPlayer> players = game.players();
+        int maxRows = 0;
+        for (int idx = 1; idx < players.size(); idx++) {
+            maxRows = Math.max(maxRows, rows(players.get(idx)));
+        }
+        for (int row = 0; row < maxRows; row++) {
+            boolean first = true;
+            for (int idx = 1; idx < players.size(); idx++) {
+                BlackjackPlayer player = players.get(idx);
+                if (row < rows(player)) {
+                    if (!first) {
+                        appendRepeated(' ', GAP);
+                    }
+                    appendRow(player, row);
+                    first = false;
+                }
+            }
+            endLine();
+        }
+        return this;
+    }
+
+    /**
+     * Adds lines of text to the frame.
+     *
+     * @param text the text, may hold line separators
+     * @return      this renderer
+     */
+    public ConsoleRenderer println(CharSequence text) {
+        int start = 0;
+        for (int idx = 0; idx < text.length(); idx++) {
+            char c = text.charAt(idx);
+            if (c == '\n' || c == '\r') {
+                frame.append(text, start, idx);
+                endLine();
+                if (c == '\r' && idx + 1 < text.length() && text.charAt(idx + 1) == '\n') {
+                    idx++;
+                }
+                start = idx + 1;
+            }
+        }
+        frame.append(text, start, text.length());
+        endLine();
+        return this;
+    }
+
+    /**
+     * The frame laid out so far, with the lines ended by new lines. Only valid till the frame changes.
+     *
+     * @return      the frame
+     */
+    public CharSequence frame() {
+        return frame;
+    }
+
+    /**
+     * Draws the frame and keeps it to compare the next one with. With ANSI, the lines unchanged since the last draw
+     * are skipped and the console below the frame is cleared.
+     *
+     * @param out the console
+     * @throws IOException if the frame could not be written
+     */
+    public void draw(Writer out) throws IOException {
+        output.setLength(0);
+        if (!ansi) {
+            for (int line = 0; line < lines; line++) {
+                output.append(frame, lineStart(lineEnds, line), lineEnds[line]).append(LINE_SEPARATOR);
+            }
+        } else {
+            if (drawnLines < 0) {
+                output.append(ESCAPE).append("H").append(ESCAPE).append("2J");
+            }
+            for (int line = 0; line < lines; line++) {
+                if (line >= drawnLines || !sameLine(line)) {
+                    output.append(ESCAPE).append(line + 1).append(";1H");
+                    output.append(frame, lineStart(lineEnds, line), lineEnds[line]);
+                    output.append(ESCAPE).append("K");
+                }
+            }
+            // Clears the lines of a longer previous frame and whatever was typed below it
+            output.append(ESCAPE).append(lines + 1).append(";1H").append(ESCAPE).append("J");
+        }
+
+        if (chars.length < output.length()) {
+            chars = new char[Math.max(output.length(), chars.length * 2)];
+        }
+        output.getChars(0, output.length(), chars, 0);
+        out.write(chars, 0, output.length());
+        out.flush();
+
+        swap();
+    }
+
+    private void swap() {
+        StringBuilder buffer = drawn;
+        drawn = frame;
+        frame = buffer;
+        int[] ends = drawnLineEnds;
+        drawnLineEnds = lineEnds;
+        lineEnds = ends;
+        drawnLines = lines;
+        frame.setLength(0);
+        lines = 0;
+    }
+
+    private boolean sameLine(int line) {
+        int start = lineStart(lineEnds, line);
+        int drawnStart = lineStart(drawnLineEnds, line);
+        int length = lineEnds[line] - start;
+        if (length != drawnLineEnds[line] - drawnStart) {
+            return false;
+        }
+        for (int idx = 0; idx < length; idx++) {
+            if (frame.charAt(start + idx) != drawn.charAt(drawnStart + idx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lineStart(int[] ends, int line) {
+        // Skips the new line ending the previous line
+        return (line == 0) ? 0 : ends[line - 1] + 1;
+    }
+
+    private void endLine() {
+        if (lines == lineEnds.length) {
+            lineEnds = Arrays.copyOf(lineEnds, lines * 2);
+        }
+        lineEnds[lines++] = frame.length();
+        frame.append('\n');
+    }
+
+    /**
+     * Number of rows of a player: the name, the cards, the chips, the bet and the state if visible, between lines.
+     */
+    private static int rows(BlackjackPlayer player) {
+        return 5 + (player.getHand(0).size() == 0 ? 0 : CARD_ROWS) + (player.isStateVisible() ? 1 : 0);
+    }
+
+    private static int width(BlackjackPlayer player) {
+        if (player.getHand(0).size() == 0) {
+            return EMPTY_WIDTH;
+        }
+        int width = (player.getHandCount() - 1) * HAND_SEPARATOR.length();
+        for (int hand = 0; hand < player.getHandCount(); hand++) {
+            width += player.getHand(hand).size() * CARD_WIDTH;
+        }
+        return width;
+    }
+
+    private void appendRow(BlackjackPlayer player, int row) {
+        int width = width(player);
+        int start = frame.length();
+        int cardRows = (player.getHand(0).size() == 0) ? 0 : CARD_ROWS;
+
+        if (row == 0) {
+            frame.append(player.getName());
+        } else if (row == 1 || row == rows(player) - 1) {
+            appendRepeated('-', width);
+        } else if (row < 2 + cardRows) {
+            for (int idx = 0; idx < player.getHandCount(); idx++) {
+                if (idx > 0) {
+                    frame.append(HAND_SEPARATOR);
+                }
+                Hand hand = player.getHand(idx);
+                for (int card = 0; card < hand.size(); card++) {
+                    int glyph = hand.isFaceUp(card) ? hand.cardAt(card) : BACK;
+                    frame.append(GLYPHS[glyph][row - 2]);
+                }
+            }
+        } else if (row == 2 + cardRows) {
+            frame.append("Chips : ").append(player.getChips());
+        } else if (row == 3 + cardRows) {
+            frame.append("Bet : ");
+            for (int hand = 0; hand < player.getHandCount(); hand++) {
+                frame.append((hand > 0) ? ", " : "").append(player.getBet(hand));
+            }
+        } else {
+            frame.append("State : ");
+            for (int hand = 0; hand < player.getHandCount(); hand++) {
+                frame.append((hand > 0) ? ", " : "").append(player.getState(hand).name());
+            }
+        }
+        appendRepeated(' ', width - (frame.length() - start));
+    }
+
+    private void appendRepeated(char c, int count) {
+        for (int idx = 0; idx < count; idx++) {
+            frame.append(c);
+        }
+    }
+}
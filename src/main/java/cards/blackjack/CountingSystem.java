@@ -0,0 +1,58 @@
+package cards.blackjack;
+
+import cards.common.Deck;
+import cards.common.RunningCount;
+
+/**
+ * Card counting systems, defining the tag of each rank for a {@link RunningCount}.
+ */
+public enum CountingSystem {
+    /**
+     * High-Low, the balanced count of 2 - 6 as +1 and of tens and aces as -1.
+     */
+    HI_LO(true, -1, 1, 1, 1, 1, 1, 0, 0, 0, -1, -1, -1, -1),
+    /**
+     * Knock-Out, unbalanced as 7 counts +1 too. Starts at 4 - 4 * decks so that the count is 4 after the full shoe.
+     */
+    KO(false, -1, 1, 1, 1, 1, 1, 1, 0, 0, -1, -1, -1, -1),
+    /**
+     * Omega II, the balanced level two count.
+     */
+    OMEGA_II(true, 0, 1, 1, 2, 2, 2, 1, 0, -1, -2, -2, -2, -2);
+
+    private final boolean balanced;
+
+    /**
+     * Tags indexed by the rank ordinal, Ace to King.
+     */
+    private final int[] tags;
+
+    CountingSystem(boolean balanced, int... tags) {
+        this.balanced = balanced;
+        this.tags = tags;
+    }
+
+    public boolean isBalanced() {
+        return balanced;
+    }
+
+    /**
+     * The count at the start of a freshly shuffled shoe.
+     *
+     * @param numDecks the number of decks in the shoe
+     * @return      the initial count
+     */
+    public int initialCount(int numDecks) {
+        return balanced ? 0 : 4 - 4 * numDecks;
+    }
+
+    /**
+     * Starts counting the cards dealt from the deck. Every call attaches another count to the deck.
+     *
+     * @param deck the deck
+     * @return      the running count attached to the deck
+     */
+    public RunningCount count(Deck deck) {
+        return new RunningCount(deck, tags, initialCount(deck.getNumDecks()));
+    }
+}
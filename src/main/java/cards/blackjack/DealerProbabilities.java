@@ -0,0 +1,341 @@
+package cards.blackjack;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cards.common.Deck;
+import cards.common.Rank;
+
+/**
+ * Calculates the exact distribution of the dealer's final hand from the up card and the composition of the cards
+ * left in the shoe, following the dealer rule of the table.
+ * <p>
+ * The dealer's draws are followed card by card, taking each card out of the composition as it is drawn. The hands
+ * reachable within a query are memoized by the cards drawn, and the distributions are cached by up card and
+ * composition, so repeated queries during a shoe are answered from the cache. As the dealer does not check for a
+ * blackjack before the players play, a dealer blackjack is part of the distribution.
+ * <p>
+ * Compositions are counted by card value, indexed 1 (Ace) to 10. The calculator is not thread safe, each thread
+ * should use its own.
+ */
+public class DealerProbabilities {
+    /**
+     * Number of distributions cached by default.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    /**
+     * Highest total of a hand.
+     */
+    private static final int MAX_TOTAL = 21;
+
+    /**
+     * Index of the bust and blackjack outcomes in a distribution after the final totals 0 - 21.
+     */
+    private static final int BUST = MAX_TOTAL + 1;
+
+    private static final int BLACKJACK = MAX_TOTAL + 2;
+
+    /**
+     * Number of card values, Ace (1) to 10.
+     */
+    private static final int VALUES = 10;
+
+    /**
+     * Bits for the count of a card value in the cache key.
+     */
+    private static final int COUNT_BITS = 12;
+
+    /**
+     * Bits for the number of cards of a value drawn by the dealer in the memo key.
+     */
+    private static final int DRAWN_BITS = 5;
+
+    private final TableRules rules;
+
+    /**
+     * Values of the ranks at the table indexed by the rank ordinal.
+     */
+    private final int[] rankValues;
+
+    /**
+     * Distributions by up card and composition, least recently used first.
+     */
+    private final Map<Key, Outcome> cache;
+
+    /**
+     * Cards left while following the dealer's draws in a query.
+     */
+    private final int[] remaining = new int[VALUES + 1];
+
+    /**
+     * Distributions from the hands reached in a query, by the cards drawn.
+     */
+    private final Map<Long, double[]> memo = new HashMap<Long, double[]>();
+
+    public DealerProbabilities(TableRules rules) {
+        this(rules, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param rules the rules of the table
+     * @param cacheSize the maximum number of distributions cached
+     */
+    public DealerProbabilities(TableRules rules, final int cacheSize) {
+        this.rules = rules;
+        this.rankValues = rules.getRankValue().toArray();
+        for (int value : rankValues) {
+            if (value < 1 || value > VALUES) {
+                throw new IllegalArgumentException("Card values should be between 1 and 10 : " + value);
+            }
+        }
+        this.cache = new LinkedHashMap<Key, Outcome>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Outcome> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Composition of the full shoe of the table.
+     *
+     * @return      the number of cards of each value, indexed by the value
+     */
+    public int[] fullShoe() {
+        int[] composition = new int[VALUES + 1];
+        for (int value : rankValues) {
+            composition[value] += 4 * rules.getNumDecks();
+        }
+        return composition;
+    }
+
+    /**
+     * Composition of the cards left in the deck.
+     *
+     * @param deck the deck
+     * @return      the number of cards of each value, indexed by the value
+     */
+    public int[] composition(Deck deck) {
+        int[] composition = new int[VALUES + 1];
+        for (Rank rank : Rank.values()) {
+            composition[rankValues[rank.ordinal()]] += deck.remaining(rank);
+        }
+        return composition;
+    }
+
+    /**
+     * The distribution of the dealer's final hand.
+     *
+     * @param upCard the dealer's up card
+     * @param composition the number of cards of each value left in the shoe without the up card
+     * @return      the distribution
+     */
+    public Outcome outcome(Rank upCard, int[] composition) {
+        return outcome(rankValues[upCard.ordinal()], composition);
+    }
+
+    /**
+     * The distribution of the dealer's final hand.
+     *
+     * @param upValue the value of the dealer's up card, 1 for an Ace
+     * @param composition the number of cards of each value left in the shoe without the up card
+     * @return      the distribution
+     */
+    public Outcome outcome(int upValue, int[] composition) {
+        if (upValue < 1 || upValue > VALUES) {
+            throw new IllegalArgumentException("Up card value should be between 1 and 10 : " + upValue);
+        }
+        if (composition.length != VALUES + 1) {
+            throw new IllegalArgumentException("Composition should be indexed by the values 1 to 10");
+        }
+        Key key = new Key(upValue, composition);
+        Outcome outcome = cache.get(key);
+        if (outcome == null) {
+            outcome = calculate(upValue, composition);
+            cache.put(key, outcome);
+        }
+        return outcome;
+    }
+
+    public int cacheSize() {
+        return cache.size();
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private Outcome calculate(int upValue, int[] composition) {
+        int left = 0;
+        for (int value = 1; value <= VALUES; value++) {
+            remaining[value] = composition[value];
+            left += composition[value];
+        }
+        memo.clear();
+        double[] probabilities = distribution(upValue, upValue == 1, 1, left, 0L);
+        memo.clear();
+        return new Outcome(probabilities);
+    }
+
+    /**
+     * Distribution of the dealer's final hand from a hand which has to be hit.
+     *
+     * @param value the hard value of the hand
+     * @param ace whether the hand holds an ace
+     * @param cards the number of cards in the hand
+     * @param left the number of cards left in the shoe
+     * @param drawn the cards drawn after the up card, packed by value
+     * @return      the distribution
+     */
+    private double[] distribution(int value, boolean ace, int cards, int left, long drawn) {
+        double[] outcome = memo.get(drawn);
+        if (outcome != null) {
+            return outcome;
+        }
+        outcome = new double[BLACKJACK + 1];
+        for (int card = 1; card <= VALUES; card++) {
+            int count = remaining[card];
+            if (count == 0) {
+                continue;
+            }
+            double chance = (double) count / left;
+            int nextValue = value + card;
+            boolean nextAce = ace || card == 1;
+            int end = end(nextValue, nextAce, cards + 1, left - 1);
+            if (end >= 0) {
+                outcome[end] += chance;
+            } else {
+                remaining[card]--;
+                double[] next = distribution(nextValue, nextAce, cards + 1, left - 1,
+                        drawn + (1L << (card - 1) * DRAWN_BITS));
+                remaining[card]++;
+                for (int idx = 0; idx < outcome.length; idx++) {
+                    outcome[idx] += chance * next[idx];
+                }
+            }
+        }
+        memo.put(drawn, outcome);
+        return outcome;
+    }
+
+    /**
+     * The final outcome of the hand if the dealer stops on it. The dealer also stops if the shoe runs out.
+     *
+     * @return      the index of the outcome or -1 if the dealer hits
+     */
+    private int end(int value, boolean ace, int cards, int left) {
+        if (value > MAX_TOTAL) {
+            return BUST;
+        }
+        int best = (ace && value + 10 <= MAX_TOTAL) ? value + 10 : value;
+        if (cards == 2 && best == MAX_TOTAL) {
+            return BLACKJACK;
+        }
+        if (!rules.dealerHits(value, best) || left == 0) {
+            return best;
+        }
+        return -1;
+    }
+
+    /**
+     * Distribution of the dealer's final hand.
+     */
+    public static final class Outcome {
+        private final double[] probabilities;
+
+        Outcome(double[] probabilities) {
+            this.probabilities = probabilities;
+        }
+
+        /**
+         * Probability of the dealer standing on the total, not counting a blackjack.
+         *
+         * @param total the final total
+         * @return      the probability
+         */
+        public double probability(int total) {
+            return (total < 0 || total > MAX_TOTAL) ? 0 : probabilities[total];
+        }
+
+        public double bust() {
+            return probabilities[BUST];
+        }
+
+        public double blackjack() {
+            return probabilities[BLACKJACK];
+        }
+
+        /**
+         * Expected value per unit bet of standing on the total against the dealer.
+         *
+         * @param total the player's total, not a blackjack
+         * @return      the expected value
+         */
+        public double standValue(int total) {
+            if (total > MAX_TOTAL) {
+                return -1;
+            }
+            double ev = probabilities[BUST] - probabilities[BLACKJACK];
+            for (int dealerTotal = 0; dealerTotal <= MAX_TOTAL; dealerTotal++) {
+                ev += probabilities[dealerTotal] * Integer.signum(total - dealerTotal);
+            }
+            return ev;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buffer = new StringBuilder();
+            for (int total = 17; total <= MAX_TOTAL; total++) {
+                buffer.append(String.format("%d : %.6f, ", total, probabilities[total]));
+            }
+            return buffer.append(String.format("Blackjack : %.6f, Bust : %.6f",
+                    probabilities[BLACKJACK], probabilities[BUST])).toString();
+        }
+    }
+
+    /**
+     * Cache key packing the up card and the composition into two longs.
+     */
+    private static final class Key {
+        private final long low;
+
+        private final long high;
+
+        Key(int upValue, int[] composition) {
+            long low = 0;
+            long high = upValue;
+            for (int value = 1; value <= VALUES; value++) {
+                int count = composition[value];
+                if (count < 0 || count >= 1 << COUNT_BITS) {
+                    throw new IllegalArgumentException("Invalid count of " + value + " : " + count);
+                }
+                if (value <= VALUES / 2) {
+                    low = (low << COUNT_BITS) | count;
+                } else {
+                    high = (high << COUNT_BITS) | count;
+                }
+            }
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return low == other.low && high == other.high;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = low * 31 + high;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
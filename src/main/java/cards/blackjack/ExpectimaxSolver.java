@@ -0,0 +1,430 @@
+package cards.blackjack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+import cards.common.Hand;
+import cards.common.Rank;
+
+/**
+ * Computes the expected values of {@link Action#STAND}, {@link Action#HIT} and {@link Action#DOUBLEDOWN} for the
+ * hand whose turn it is, from the composition of the cards the player has not seen, i.e. the cards left in the
+ * shoe and the dealer's hole card.
+ * <p>
+ * Standing and doubling down are valued exactly with the {@link DealerProbabilities}. Hitting is searched card by
+ * card, taking each card out of the composition, with the player standing or hitting again whichever is worth more.
+ * The search is deepened one hit at a time till it is exact or the time budget runs out, so a solution always holds
+ * the values of the deepest search completed: a hit valued with a search cut short is a lower bound of its exact
+ * value, as the player could only stand where the search stopped. The values of hitting are cached by up card,
+ * hand and composition across searches, so the searches deepening a solution and the solutions later in the shoe
+ * start from what is known.
+ * <p>
+ * Compositions are counted by card value, indexed 1 (Ace) to 10. The solver is not thread safe, each thread should
+ * use its own.
+ */
+public class ExpectimaxSolver {
+    /**
+     * Number of hit values cached by default.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    /**
+     * Highest total of a hand.
+     */
+    private static final int MAX_TOTAL = 21;
+
+    /**
+     * Number of card values, Ace (1) to 10.
+     */
+    private static final int VALUES = 10;
+
+    /**
+     * Bits for the count of a card value in the cache key.
+     */
+    private static final int COUNT_BITS = 12;
+
+    /**
+     * Depth of a value searched to the end.
+     */
+    private static final int EXACT = Integer.MAX_VALUE;
+
+    /**
+     * Values of the ranks at the table indexed by the rank ordinal.
+     */
+    private final int[] rankValues;
+
+    private final DealerProbabilities dealer;
+
+    /**
+     * Values of hitting by up card, hand and composition, least recently used first.
+     */
+    private final Map<Key, HitValue> cache;
+
+    /* State of a search */
+
+    /**
+     * Cards left while following the player's hits.
+     */
+    private final int[] remaining = new int[VALUES + 1];
+
+    private int upValue;
+
+    private long deadline;
+
+    private boolean timedOut;
+
+    /**
+     * Whether the depth cut the search of the hand being valued short.
+     */
+    private boolean cutShort;
+
+    public ExpectimaxSolver(TableRules rules) {
+        this(rules, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param rules the rules of the table
+     * @param cacheSize the maximum number of hit values cached
+     */
+    public ExpectimaxSolver(TableRules rules, final int cacheSize) {
+        this.rankValues = rules.getRankValue().toArray();
+        this.dealer = new DealerProbabilities(rules);
+        this.cache = new LinkedHashMap<Key, HitValue>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, HitValue> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Solves the hand whose turn it is at the table. The cards of the other players and the dealer's up card are
+     * known, the dealer's hole card is not.
+     *
+     * @param game the game, in play
+     * @param budgetNanos the time after which the search stops deepening
+     * @return      the solution
+     */
+    public Solution solve(Blackjack game, long budgetNanos) {
+        BlackjackPlayer player = game.currentPlayer();
+        if (game.getState() != GameState.INPLAY || player == game.dealer()
+                || player.getState() != PlayerState.INPLAY) {
+            throw new IllegalStateException("There is no hand to play");
+        }
+        int[] composition = new int[VALUES + 1];
+        for (Rank rank : Rank.values()) {
+            composition[rankValues[rank.ordinal()]] += game.remaining(rank);
+        }
+        Hand dealerHand = game.dealer().getHand();
+        for (int idx = 0; idx < dealerHand.size(); idx++) {
+            if (!dealerHand.isFaceUp(idx)) {
+                composition[rankValues[dealerHand.rankAt(idx).ordinal()]]++;
+            }
+        }
+        Hand hand = player.getHand();
+        return solve(hand.value(), hand.aceCount() > 0, rankValues[dealerHand.rankAt(0).ordinal()], composition,
+                player.canDoubleDown(), budgetNanos);
+    }
+
+    /**
+     * Solves a hand, e.g. to check a cell of a {@link StrategyTable} against a composition.
+     *
+     * @param value the hard value of the hand
+     * @param ace whether the hand holds an ace
+     * @param upValue the value of the dealer's up card, 1 for an Ace
+     * @param composition the number of cards of each value not seen by the player, indexed by the value
+     * @param canDoubleDown whether the hand can be doubled down
+     * @param budgetNanos the time after which the search stops deepening
+     * @return      the solution
+     */
+    public Solution solve(int value, boolean ace, int upValue, int[] composition, boolean canDoubleDown,
+            long budgetNanos) {
+        if (value < 2 || value >= MAX_TOTAL) {
+            throw new IllegalArgumentException("The hand can not be played : " + value);
+        }
+        if (upValue < 1 || upValue > VALUES) {
+            throw new IllegalArgumentException("Up card value should be between 1 and 10 : " + upValue);
+        }
+        if (composition.length != VALUES + 1) {
+            throw new IllegalArgumentException("Composition should be indexed by the values 1 to 10");
+        }
+        long start = System.nanoTime();
+        int left = 0;
+        for (int card = 1; card <= VALUES; card++) {
+            remaining[card] = composition[card];
+            left += composition[card];
+        }
+        if (left < 2) {
+            throw new IllegalArgumentException("The dealer needs a hole card and a card to hit : " + left);
+        }
+        this.upValue = upValue;
+        this.timedOut = false;
+
+        double stand = stand(best(value, ace));
+        double doubleDown = canDoubleDown ? doubleDown(value, ace, left) : Double.NaN;
+
+        // The first search always completes, so that hitting has a value to compare
+        deadline = Long.MAX_VALUE;
+        cutShort = false;
+        double hit = hit(value, ace, left, 1);
+        int depth = 1;
+        boolean exact = !cutShort;
+
+        deadline = (budgetNanos > Long.MAX_VALUE - start) ? Long.MAX_VALUE : start + budgetNanos;
+        while (!exact) {
+            cutShort = false;
+            double deeper = hit(value, ace, left, depth + 1);
+            if (timedOut) {
+                break;
+            }
+            hit = deeper;
+            depth++;
+            exact = !cutShort;
+        }
+        return new Solution(stand, hit, doubleDown, depth, exact, System.nanoTime() - start);
+    }
+
+    public int cacheSize() {
+        return cache.size();
+    }
+
+    public void clearCache() {
+        cache.clear();
+        dealer.clearCache();
+    }
+
+    private double stand(int total) {
+        return dealer.outcome(upValue, remaining).standValue(total);
+    }
+
+    private double doubleDown(int value, boolean ace, int left) {
+        double ev = 0;
+        for (int card = 1; card <= VALUES; card++) {
+            int count = remaining[card];
+            if (count == 0) {
+                continue;
+            }
+            int total = value + card;
+            if (total > MAX_TOTAL) {
+                ev -= (double) count / left;
+            } else {
+                remaining[card]--;
+                ev += (double) count / left * stand(best(total, ace || card == 1));
+                remaining[card]++;
+            }
+        }
+        return 2 * ev;
+    }
+
+    /**
+     * Expected value of hitting the hand and playing on with at most depth - 1 more hits.
+     *
+     * @param value the hard value of the hand
+     * @param ace whether the hand holds an ace
+     * @param left the number of cards left
+     * @param depth the number of hits searched
+     * @return      the expected value, not to be used if timed out
+     */
+    private double hit(int value, boolean ace, int left, int depth) {
+        Key key = new Key(upValue, value, ace, remaining);
+        HitValue entry = cache.get(key);
+        if (entry != null && entry.depth >= depth) {
+            cutShort |= entry.depth != EXACT;
+            return entry.value;
+        }
+        boolean outerCutShort = cutShort;
+        cutShort = false;
+        double ev = 0;
+        for (int card = 1; card <= VALUES; card++) {
+            int count = remaining[card];
+            if (count == 0) {
+                continue;
+            }
+            double chance = (double) count / left;
+            int total = value + card;
+            boolean hasAce = ace || card == 1;
+            if (total > MAX_TOTAL) {
+                ev -= chance;
+                continue;
+            }
+            // An outcome of the dealer not cached takes far longer than a look at the clock
+            if (deadline != Long.MAX_VALUE && System.nanoTime() > deadline) {
+                timedOut = true;
+                return Double.NaN;
+            }
+            remaining[card]--;
+            double stand = stand(best(total, hasAce));
+            double next = stand;
+            // The player can not take another card on 21, and the dealer needs cards to play
+            if (best(total, hasAce) < MAX_TOTAL && left > 2) {
+                if (depth > 1) {
+                    next = Math.max(stand, hit(total, hasAce, left - 1, depth - 1));
+                } else {
+                    cutShort = true;
+                }
+            }
+            remaining[card]++;
+            if (timedOut) {
+                return Double.NaN;
+            }
+            ev += chance * next;
+        }
+
+        if (entry == null || entry.depth < depth) {
+            cache.put(key, new HitValue(ev, cutShort ? depth : EXACT));
+        }
+        cutShort |= outerCutShort;
+        return ev;
+    }
+
+    private static int best(int value, boolean ace) {
+        return (ace && value + 10 <= MAX_TOTAL) ? value + 10 : value;
+    }
+
+    /**
+     * Expected values of the actions for a hand, per unit of its bet.
+     */
+    public static final class Solution {
+        private final double stand;
+
+        private final double hit;
+
+        private final double doubleDown;
+
+        private final int depth;
+
+        private final boolean exact;
+
+        private final long elapsedNanos;
+
+        Solution(double stand, double hit, double doubleDown, int depth, boolean exact, long elapsedNanos) {
+            this.stand = stand;
+            this.hit = hit;
+            this.doubleDown = doubleDown;
+            this.depth = depth;
+            this.exact = exact;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * The action with the highest expected value, standing on a tie.
+         *
+         * @return      one of {@link Action#STAND}, {@link Action#HIT} or {@link Action#DOUBLEDOWN}
+         */
+        public Action getBest() {
+            Action best = (hit > stand) ? Action.HIT : Action.STAND;
+            return (doubleDown > Math.max(stand, hit)) ? Action.DOUBLEDOWN : best;
+        }
+
+        /**
+         * Expected value of the action.
+         *
+         * @param action one of {@link Action#STAND}, {@link Action#HIT} or {@link Action#DOUBLEDOWN}
+         * @return      the expected value, NaN if the hand can not be doubled down
+         */
+        public double getExpectedValue(Action action) {
+            switch (action) {
+                case STAND:
+                    return stand;
+                case HIT:
+                    return hit;
+                case DOUBLEDOWN:
+                    return doubleDown;
+                default:
+                    throw new IllegalArgumentException("Not solved for " + action);
+            }
+        }
+
+        /**
+         * Most hits searched, along with the player standing or hitting again.
+         *
+         * @return      the number of hits
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Whether hitting was searched to the end, otherwise its value is a lower bound.
+         *
+         * @return      true if exact
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stand : %.6f, Hit : %.6f, Double Down : %.6f, Best : %s, Depth : %d%s",
+                    stand, hit, doubleDown, getBest(), depth, exact ? " (exact)" : "");
+        }
+    }
+
+    /**
+     * Value of hitting a hand searched to a depth.
+     */
+    private static final class HitValue {
+        private final double value;
+
+        private final int depth;
+
+        HitValue(double value, int depth) {
+            this.value = value;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Cache key packing the up card, the hand and the composition into two longs.
+     */
+    private static final class Key {
+        private final long low;
+
+        private final long high;
+
+        private final int hand;
+
+        Key(int upValue, int value, boolean ace, int[] composition) {
+            long low = 0;
+            long high = 0;
+            for (int card = 1; card <= VALUES; card++) {
+                int count = composition[card];
+                if (count < 0 || count >= 1 << COUNT_BITS) {
+                    throw new IllegalArgumentException("Invalid count of " + card + " : " + count);
+                }
+                if (card <= VALUES / 2) {
+                    low = (low << COUNT_BITS) | count;
+                } else {
+                    high = (high << COUNT_BITS) | count;
+                }
+            }
+            this.low = low;
+            this.high = high;
+            this.hand = (upValue << 6) | (value << 1) | (ace ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return low == other.low && high == other.high && hand == other.hand;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = (low * 31 + high) * 31 + hand;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
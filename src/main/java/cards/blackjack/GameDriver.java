@@ -1,6 +1,9 @@
 package cards.blackjack;
 
-import java.io.StringWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -8,10 +11,8 @@ import java.util.Scanner;
 
 import cards.blackjack.Blackjack.Action;
 import cards.blackjack.Blackjack.GameState;
-import cards.common.Visitor;
 
 import com.google.common.base.Splitter;
-import com.google.common.base.StandardSystemProperty;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 
@@ -47,15 +48,25 @@ public class GameDriver {
         }
         
         Scanner scanner = new Scanner(System.in);
+        // The renderer is reused for every frame so that only the changes are redrawn
+        ConsoleRenderer renderer = new ConsoleRenderer();
+        Writer console = new BufferedWriter(new OutputStreamWriter(System.out));
         try {
             // Initial actions for the game
             List<Action> actions = game.getState().getActions();
             GameState state = GameState.START;
+            // Why the last action was refused, if it was
+            String refusal = null;
             
             while (true) {
                 Map<Integer, Action> actionIdMap = createActionIdetifierMap(actions);
-                printGame(game, state);
-                printApplicableActions(actionIdMap);
+                printGame(renderer, game, state);
+                printApplicableActions(renderer, actionIdMap);
+                if (refusal != null) {
+                    renderer.println(refusal);
+                    refusal = null;
+                }
+                renderer.draw(console);
                 
                 /* Choose action */
                 int chosenActionInt = chooseAction(scanner, actionIdMap);
@@ -67,12 +78,19 @@ public class GameDriver {
                 int[] params = getChosenActionParameters(scanner, chosenAction.paramsRequired(game));
                 
                 /* Execute action and get actions applicable after that */
-                state = game.action(
-                        chosenAction.toString(), params);
+                try {
+                    state = game.action(
+                            chosenAction.toString(), params);
+                } catch (IllegalStateException e) {
+                    // e.g. splitting a hand which is not a pair
+                    refusal = e.getMessage();
+                }
                 
                 /* Set available actions */
                 actions = state.getActions();
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not print the game", e);
         } finally {
             scanner.close();
         }
@@ -147,36 +165,31 @@ public class GameDriver {
     }
     
     /**
-     * Print the current applicable actions for the user to choose
+     * Adds the current applicable actions for the user to choose to the frame
      * 
+     * @param renderer the console renderer
      * @param actions the actions valid for the current state of the game
      */
-    private static void printApplicableActions(Map<Integer, Action> actions) {        
-        StringWriter writer = new StringWriter();
-        
-        writer.append("Choose the number corresponding to the following actions : ");
-        writer.append(StandardSystemProperty.LINE_SEPARATOR.value());
+    private static void printApplicableActions(ConsoleRenderer renderer, Map<Integer, Action> actions) {        
+        renderer.println("Choose the number corresponding to the following actions : ");
         
         for (Integer action : actions.keySet()) {
-            writer.append(actions.get(action).getUsage() + " - " + action);
-            writer.append(StandardSystemProperty.LINE_SEPARATOR.value());
+            renderer.println(actions.get(action).getUsage() + " - " + action);
         }
-        System.out.println(writer);
+        renderer.println("");
     }
 
     /**
-     * Prints the game state to the console
+     * Lays out the game state in a new frame
      * 
+     * @param renderer the console renderer
      * @param game the game instance
      * @param state 
      */
-    private static void printGame(Blackjack game, GameState state) {
-        Visitor<List<String>, Blackjack, BlackjackPlayer> viewer = new ConsoleGameViewer();
-        for (String row : game.accept(viewer)) {
-            System.out.println(row);
-        }
-        System.out.println();
-        System.out.println("Game State : " + state.toString());
-        System.out.println();
+    private static void printGame(ConsoleRenderer renderer, Blackjack game, GameState state) {
+        renderer.render(game);
+        renderer.println("");
+        renderer.println("Game State : " + state.toString());
+        renderer.println("");
     }
 }
@@ -0,0 +1,207 @@
+package cards.blackjack;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.common.Player;
+import cards.common.Visitor;
+
+import com.google.common.base.Function;
+
+/**
+ * Hosts many {@link Blackjack} tables in one process.
+ * <p>
+ * Each table is an actor with its own mailbox. Actions submitted for a table are queued and run one at a time by
+ * whichever pool thread picks the table up, so a table is only ever touched by a single thread at a time without
+ * any locks. An idle table holds no thread, which lets a server host tens of thousands of them on a small pool.
+ */
+public class GameServer {
+    /**
+     * Messages run for a table before it yields the thread to the other tables.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private final ExecutorService executor;
+
+    private final ConcurrentMap<Integer, Table> tables = new ConcurrentHashMap<Integer, Table>();
+
+    private final AtomicInteger nextTableId = new AtomicInteger();
+
+    /**
+     * Creates a server running the tables on a pool with a thread per processor.
+     */
+    public GameServer() {
+        this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param executor the pool running the tables, shut down with the server
+     */
+    public GameServer(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Opens a new table.
+     *
+     * @param numPlayers the number of players excluding the dealer
+     * @param chips the chips available to each player
+     * @param rules the rules of the table
+     * @return      the id of the table
+     * @throws RejectedExecutionException if the server is shut down
+     */
+    public int openTable(int numPlayers, int chips, TableRules rules) {
+        checkRunning();
+        int tableId = nextTableId.incrementAndGet();
+        tables.put(tableId, new Table(new Blackjack(numPlayers, chips, rules)));
+        return tableId;
+    }
+
+    /**
+     * Closes the table. Actions already queued for the table are still run.
+     *
+     * @param tableId the id of the table
+     * @return      true if the table was open
+     */
+    public boolean closeTable(int tableId) {
+        return tables.remove(tableId) != null;
+    }
+
+    public int tableCount() {
+        return tables.size();
+    }
+
+    /**
+     * Queues an action for the table.
+     *
+     * @param tableId the id of the table
+     * @param action the action to take
+     * @param params any parameters needed to perform action
+     * @return      the future state of the game after the action
+     */
+    public Future<GameState> submit(int tableId, final Action action, final int[] params) {
+        final Table table = table(tableId);
+        return table.enqueue(new Callable<GameState>() {
+            @Override
+            public GameState call() {
+                return table.game.action(action, params);
+            }
+        });
+    }
+
+    /**
+     * Queues a visit of the table, e.g. to render it, in order with the actions.
+     *
+     * @param tableId the id of the table
+     * @param visitor the visitor
+     * @return      the future result of the visit
+     */
+    public <T> Future<T> accept(int tableId, final Visitor<T, Blackjack, ? extends Player> visitor) {
+        final Table table = table(tableId);
+        return table.enqueue(new Callable<T>() {
+            @Override
+            public T call() {
+                return table.game.accept(visitor);
+            }
+        });
+    }
+
+    /**
+     * Queues a message run against the game of the table in order with the actions, e.g. to take an action and
+     * render the table after it in one go.
+     *
+     * @param tableId the id of the table
+     * @param message the message, given the game
+     * @return      the future result of the message
+     */
+    <T> Future<T> enqueue(int tableId, final Function<Blackjack, T> message) {
+        final Table table = table(tableId);
+        return table.enqueue(new Callable<T>() {
+            @Override
+            public T call() {
+                return message.apply(table.game);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting work and shuts the pool down. Any table or message submitted afterwards is rejected with a
+     * {@link RejectedExecutionException}.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        tables.clear();
+    }
+
+    private void checkRunning() {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The game server is shut down");
+        }
+    }
+
+    private Table table(int tableId) {
+        checkRunning();
+        Table table = tables.get(tableId);
+        if (table == null) {
+            throw new IllegalArgumentException("No table open with id : " + tableId);
+        }
+        return table;
+    }
+
+    /**
+     * A table along with its mailbox. The table is scheduled on the pool when a message arrives in an empty
+     * mailbox and runs till the mailbox is drained.
+     */
+    private class Table implements Runnable {
+        private final Blackjack game;
+
+        private final Queue<FutureTask<?>> mailbox = new ConcurrentLinkedQueue<FutureTask<?>>();
+
+        /**
+         * Whether the table is queued on or running in the pool.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Table(Blackjack game) {
+            this.game = game;
+        }
+
+        <T> Future<T> enqueue(Callable<T> message) {
+            FutureTask<T> task = new FutureTask<T>(message);
+            mailbox.offer(task);
+            schedule();
+            return task;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            FutureTask<?> task;
+            for (int count = 0; count < BATCH_SIZE && (task = mailbox.poll()) != null; count++) {
+                task.run();
+            }
+            scheduled.set(false);
+            // Pick up the messages which arrived after the last poll, or yield to the other tables
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
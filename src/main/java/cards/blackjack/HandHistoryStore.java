@@ -0,0 +1,463 @@
+package cards.blackjack;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.Rule;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+
+/**
+ * Store of the hands played, as fixed width records in memory mapped segment files.
+ * <p>
+ * Every round has a slot for each seat, so the record of a seat in a round is found by arithmetic on the round id
+ * and the records of different rounds can be written from different threads without any coordination. The
+ * segment files are mapped when first needed and grow the store by {@link #DEFAULT_SEGMENT_RECORDS} records at a
+ * time by default, so the history is only bounded by the disk. A {@link Cursor} reads the records in place from the
+ * mapped files without copying them.
+ * <p>
+ * The layout of the store is described by a header file written with the first segment, holding a magic number, the
+ * version of the layout, the record size, the seats per round and the records per segment. A store is only opened
+ * again with the same seats per round and records per segment.
+ * <p>
+ * A record is kept per seat, so a seat splitting a pair has the actions of all its hands, the chips won or lost on
+ * all of them and the final state and rule of its first hand.
+ * <p>
+ * The layout of a record, in bytes:
+ * <pre>
+ *  0 round id             (long)
+ *  8 chips won or lost    (double)
+ * 16 actions, 4 bits each (long)
+ * 24 seat, 0 if empty     (byte)
+ * 25 first card code      (byte)
+ * 26 second card code     (byte)
+ * 27 final player state   (byte)
+ * 28 settling rule + 1    (byte)
+ * 29 number of actions    (byte)
+ * </pre>
+ */
+public class HandHistoryStore implements Closeable {
+    /**
+     * Size of a record in bytes.
+     */
+    public static final int RECORD_SIZE = 32;
+
+    /**
+     * Records in a segment file by default, 128 MB.
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 22;
+
+    /**
+     * Actions kept in a record. The number of actions is kept even if there were more.
+     */
+    public static final int MAX_ACTIONS = 16;
+
+    /**
+     * Magic number starting the header file, "BJHS".
+     */
+    private static final int MAGIC = 0x424A4853;
+
+    /**
+     * Version of the layout of the records.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header file: magic, version, record size, seats per round and records per segment.
+     */
+    private static final int HEADER_SIZE = 20;
+
+    private static final int ROUND_ID = 0;
+
+    private static final int CHIPS_DELTA = 8;
+
+    private static final int ACTIONS = 16;
+
+    private static final int SEAT = 24;
+
+    private static final int FIRST_CARD = 25;
+
+    private static final int SECOND_CARD = 26;
+
+    private static final int STATE = 27;
+
+    private static final int RULE = 28;
+
+    private static final int ACTION_COUNT = 29;
+
+    private static final Action[] ACTION_VALUES = Action.values();
+
+    private static final PlayerState[] STATES = PlayerState.values();
+
+    private static final Rule[] RULES = Rule.values();
+
+    private final Path directory;
+
+    private final int seatsPerRound;
+
+    private final int segmentRecords;
+
+    /**
+     * The mapped segments, replaced by a larger copy when a segment is added.
+     */
+    private volatile MappedByteBuffer[] segments;
+
+    /**
+     * Opens the store in the directory, mapping the segments already written.
+     *
+     * @param directory the directory of the segment files
+     * @param seatsPerRound the number of players at the table
+     * @throws IOException if the segments could not be mapped
+     */
+    public HandHistoryStore(Path directory, int seatsPerRound) throws IOException {
+        this(directory, seatsPerRound, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * @param directory the directory of the segment files
+     * @param seatsPerRound the number of players at the table
+     * @param segmentRecords the number of records in a segment file
+     * @throws IOException if the segments could not be mapped, or the header of the store is missing or invalid
+     * @throws IllegalArgumentException if the store was written with other seats per round or records per segment
+     */
+    public HandHistoryStore(Path directory, int seatsPerRound, int segmentRecords) throws IOException {
+        if (seatsPerRound < 1 || seatsPerRound > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid number of seats : " + seatsPerRound);
+        }
+        if (segmentRecords < seatsPerRound || segmentRecords > Integer.MAX_VALUE / RECORD_SIZE) {
+            throw new IllegalArgumentException("Invalid number of records in a segment : " + segmentRecords);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.seatsPerRound = seatsPerRound;
+        this.segmentRecords = segmentRecords;
+
+        int count = 0;
+        while (Files.exists(segmentFile(count))) {
+            count++;
+        }
+        checkHeader(count > 0);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+        for (int idx = 0; idx < count; idx++) {
+            mapped[idx] = map(idx);
+        }
+        this.segments = mapped;
+    }
+
+    /**
+     * Checks the header file against the layout of the store, writing it for a new store.
+     *
+     * @param written whether segments were written already
+     */
+    private void checkHeader(boolean written) throws IOException {
+        Path file = directory.resolve("hands.header");
+        if (!Files.exists(file)) {
+            if (written) {
+                throw new IOException("The header of the store is missing : " + file);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(seatsPerRound).putInt(segmentRecords);
+            Files.write(file, header.array());
+            return;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        if (bytes.length != HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not the header of a hand history store : " + file);
+        }
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException("Unsupported version " + version + " of the store with records of " + recordSize
+                    + " bytes : " + file);
+        }
+        int storedSeats = header.getInt();
+        int storedRecords = header.getInt();
+        if (storedSeats != seatsPerRound || storedRecords != segmentRecords) {
+            throw new IllegalArgumentException("The store was written with " + storedSeats + " seats per round and "
+                    + storedRecords + " records per segment, not " + seatsPerRound + " and " + segmentRecords);
+        }
+    }
+
+    public int getSeatsPerRound() {
+        return seatsPerRound;
+    }
+
+    /**
+     * Number of records the mapped segments have room for, written or not.
+     *
+     * @return      the number of records
+     */
+    public long capacity() {
+        return (long) segments.length * segmentRecords;
+    }
+
+    /**
+     * Writes the hand of a seat in a round. Hands of different rounds or seats can be written concurrently.
+     *
+     * @param roundId the id of the round, from 0
+     * @param hand the hand
+     * @throws IOException if a new segment could not be mapped
+     */
+    public void write(long roundId, HandRecord hand) throws IOException {
+        long index = index(roundId, hand.seat);
+        MappedByteBuffer segment = segmentForWrite((int) (index / segmentRecords));
+        int offset = (int) (index % segmentRecords) * RECORD_SIZE;
+        segment.putLong(offset + ROUND_ID, roundId);
+        segment.putDouble(offset + CHIPS_DELTA, hand.chipsDelta);
+        segment.putLong(offset + ACTIONS, hand.actions);
+        segment.put(offset + FIRST_CARD, (byte) hand.firstCard);
+        segment.put(offset + SECOND_CARD, (byte) hand.secondCard);
+        segment.put(offset + STATE, (byte) hand.state.ordinal());
+        segment.put(offset + RULE, (byte) ((hand.rule == null) ? 0 : hand.rule.ordinal() + 1));
+        segment.put(offset + ACTION_COUNT, (byte) Math.min(hand.actionCount, 255));
+        // The seat marks the record as written
+        segment.put(offset + SEAT, (byte) hand.seat);
+    }
+
+    /**
+     * Creates a cursor before the first record.
+     *
+     * @return      the cursor
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Flushes the mapped segments to the disk. The segments stay mapped till they are garbage collected.
+     *
+     * @throws IOException if the segments could not be flushed
+     */
+    @Override
+    public void close() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    private long index(long roundId, int seat) {
+        if (roundId < 0 || seat < 1 || seat > seatsPerRound) {
+            throw new IllegalArgumentException("No slot for round " + roundId + " seat " + seat);
+        }
+        return roundId * seatsPerRound + seat - 1;
+    }
+
+    private MappedByteBuffer segmentForWrite(int segment) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        if (segment < mapped.length) {
+            return mapped[segment];
+        }
+        synchronized (this) {
+            mapped = segments;
+            if (segment >= mapped.length) {
+                int count = mapped.length;
+                mapped = Arrays.copyOf(mapped, segment + 1);
+                for (int idx = count; idx <= segment; idx++) {
+                    mapped[idx] = map(idx);
+                }
+                segments = mapped;
+            }
+            return mapped[segment];
+        }
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // The mapping stays valid after the channel is closed
+            return channel.map(MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private Path segmentFile(int segment) {
+        return directory.resolve(String.format("hands-%08d.seg", segment));
+    }
+
+    /**
+     * A hand to write, reused from round to round.
+     */
+    public static class HandRecord {
+        private int seat;
+
+        private int firstCard;
+
+        private int secondCard;
+
+        private long actions;
+
+        private int actionCount;
+
+        private PlayerState state;
+
+        private Rule rule;
+
+        private double chipsDelta;
+
+        /**
+         * Clears the actions for the next round at the seat.
+         *
+         * @param seat the seat of the player, from 1
+         * @return      this record
+         */
+        public HandRecord reset(int seat) {
+            this.seat = seat;
+            this.actions = 0;
+            this.actionCount = 0;
+            return this;
+        }
+
+        public HandRecord setCards(int firstCard, int secondCard) {
+            this.firstCard = firstCard;
+            this.secondCard = secondCard;
+            return this;
+        }
+
+        public HandRecord addAction(Action action) {
+            if (actionCount < MAX_ACTIONS) {
+                actions |= (long) action.ordinal() << (4 * actionCount);
+            }
+            actionCount++;
+            return this;
+        }
+
+        public HandRecord setState(PlayerState state) {
+            this.state = state;
+            return this;
+        }
+
+        public HandRecord setRule(Rule rule) {
+            this.rule = rule;
+            return this;
+        }
+
+        public HandRecord setChipsDelta(double chipsDelta) {
+            this.chipsDelta = chipsDelta;
+            return this;
+        }
+    }
+
+    /**
+     * Flyweight over the records of the store, reading the fields of the current record straight from the mapped
+     * segments. Only the records written are visited.
+     */
+    public class Cursor {
+        private MappedByteBuffer segment;
+
+        private int offset;
+
+        /**
+         * Index of the next record to look at.
+         */
+        private long next;
+
+        /**
+         * Moves to the next record written.
+         *
+         * @return      false if there are no more records
+         */
+        public boolean next() {
+            MappedByteBuffer[] mapped = segments;
+            long end = (long) mapped.length * segmentRecords;
+            while (next < end) {
+                MappedByteBuffer current = mapped[(int) (next / segmentRecords)];
+                int position = (int) (next % segmentRecords) * RECORD_SIZE;
+                next++;
+                if (current.get(position + SEAT) != 0) {
+                    segment = current;
+                    offset = position;
+                    return true;
+                }
+            }
+            segment = null;
+            return false;
+        }
+
+        /**
+         * Moves to the hand of the seat in the round.
+         *
+         * @param roundId the id of the round
+         * @param seat the seat of the player, from 1
+         * @return      false if the hand was not written
+         */
+        public boolean seek(long roundId, int seat) {
+            long index = index(roundId, seat);
+            MappedByteBuffer[] mapped = segments;
+            next = index + 1;
+            segment = null;
+            if (index >= (long) mapped.length * segmentRecords) {
+                return false;
+            }
+            MappedByteBuffer current = mapped[(int) (index / segmentRecords)];
+            int position = (int) (index % segmentRecords) * RECORD_SIZE;
+            if (current.get(position + SEAT) == 0) {
+                return false;
+            }
+            segment = current;
+            offset = position;
+            return true;
+        }
+
+        /* Getters for the fields of the current record */
+
+        public long getRoundId() {
+            return segment.getLong(offset + ROUND_ID);
+        }
+
+        public int getSeat() {
+            return segment.get(offset + SEAT);
+        }
+
+        public int getFirstCard() {
+            return segment.get(offset + FIRST_CARD);
+        }
+
+        public int getSecondCard() {
+            return segment.get(offset + SECOND_CARD);
+        }
+
+        /**
+         * Number of actions taken on the hand, only the first {@link #MAX_ACTIONS} are kept.
+         *
+         * @return      the number of actions
+         */
+        public int getActionCount() {
+            return segment.get(offset + ACTION_COUNT) & 0xFF;
+        }
+
+        public Action getAction(int idx) {
+            if (idx < 0 || idx >= Math.min(getActionCount(), MAX_ACTIONS)) {
+                throw new IndexOutOfBoundsException("No action kept at " + idx);
+            }
+            return ACTION_VALUES[(int) (segment.getLong(offset + ACTIONS) >>> (4 * idx)) & 0xF];
+        }
+
+        public PlayerState getState() {
+            return STATES[segment.get(offset + STATE)];
+        }
+
+        /**
+         * The rule the hand was settled by.
+         *
+         * @return      the rule or null if not settled
+         */
+        public Rule getRule() {
+            int rule = segment.get(offset + RULE);
+            return (rule == 0) ? null : RULES[rule - 1];
+        }
+
+        public double getChipsDelta() {
+            return segment.getDouble(offset + CHIPS_DELTA);
+        }
+    }
+}
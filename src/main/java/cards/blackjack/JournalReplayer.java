@@ -0,0 +1,123 @@
+package cards.blackjack;
+
+import cards.blackjack.RoundJournal.Event;
+import cards.common.RandomSource;
+
+/**
+ * Rebuilds a {@link Blackjack} table from its {@link RoundJournal}.
+ * <p>
+ * A new table is opened as recorded, its shoe laid out in the recorded order and the recorded actions are applied
+ * again, the shoe being shuffled with the values recorded. The replayed table records in a journal of its own which
+ * has to match the journal replayed event for event, cards, settlements and errors included, so a journal which does
+ * not match the code replaying it fails instead of silently building a different table.
+ * <p>
+ * The table returned keeps recording in its own journal and can be played on, its shoe being shuffled at random
+ * again once past the actions replayed.
+ */
+public final class JournalReplayer {
+    private JournalReplayer() {
+    }
+
+    /**
+     * Replays the whole journal.
+     *
+     * @param journal the journal
+     * @return      the table in the state it was at the end of the journal
+     */
+    public static Blackjack replay(RoundJournal journal) {
+        return replay(journal, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Replays the first actions of the journal.
+     *
+     * @param journal the journal
+     * @param actions the number of actions to replay
+     * @return      the table in the state it was after the actions
+     */
+    public static Blackjack replay(RoundJournal journal, int actions) {
+        RoundJournal.Reader reader = journal.reader();
+        if (reader.next() != Event.TABLE) {
+            throw new IllegalArgumentException("The journal does not start with the table");
+        }
+        ReplayRandom random = new ReplayRandom(journal.reader());
+        Blackjack game = new Blackjack(reader.getNumPlayers(), reader.getChips(), reader.getRules(), random);
+        game.shoe().arrange(reader.getShoe(), reader.getShoeSize()).cutAt(reader.getCutCard());
+        RoundJournal replayed = new RoundJournal(journal.size());
+        game.setJournal(replayed);
+        check(journal, replayed, 0, null);
+        random.end = journal.size();
+
+        int replayedActions = 0;
+        while (reader.next() != null) {
+            if (reader.getEvent() != Event.ACTION) {
+                throw new IllegalStateException("Unexpected " + reader.getEvent() + " at " + reader.position());
+            }
+            if (replayedActions++ == actions) {
+                break;
+            }
+            int from = replayed.size();
+            RuntimeException failure = null;
+            try {
+                game.action(reader.getAction(), reader.getParams());
+            } catch (RuntimeException e) {
+                // Expected only if the recorded action failed too, which the check below makes sure of
+                failure = e;
+            }
+            check(journal, replayed, from, failure);
+            // Skip the events of the action, the same in both journals
+            while (reader.position() < replayed.size()) {
+                reader.next();
+            }
+        }
+        // Shuffle at random from here on
+        random.end = replayed.size();
+        return game;
+    }
+
+    /**
+     * Checks that the events replayed from the offset are the ones recorded.
+     *
+     * @param journal the journal replayed
+     * @param replayed the journal of the replayed table
+     * @param from the offset of the first event to check
+     * @param failure the exception the replayed action failed with, if any
+     * @throws IllegalStateException if the events differ
+     */
+    private static void check(RoundJournal journal, RoundJournal replayed, int from, RuntimeException failure) {
+        int mismatch = replayed.mismatch(journal, from);
+        if (mismatch >= 0) {
+            throw new IllegalStateException("The replayed table differs from the journal at " + mismatch, failure);
+        }
+    }
+
+    /**
+     * Source of randomness drawing the values recorded in the journal, up to an offset in it, and random values
+     * after.
+     */
+    private static class ReplayRandom implements RandomSource {
+        private final RoundJournal.Reader reader;
+
+        /**
+         * Offset in the journal of the first event past the values to draw.
+         */
+        private int end;
+
+        ReplayRandom(RoundJournal.Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            while (reader.position() < end) {
+                if (reader.next() == Event.SHUFFLE) {
+                    if (reader.getShuffle() >= bound) {
+                        throw new IllegalStateException("Shuffle out of bounds at " + reader.position());
+                    }
+                    return reader.getShuffle();
+                }
+            }
+            return RandomSource.THREAD_LOCAL.nextInt(bound);
+        }
+    }
+}
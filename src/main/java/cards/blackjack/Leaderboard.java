@@ -0,0 +1,124 @@
+package cards.blackjack;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Range;
+
+/**
+ * Standings of the entrants of a {@link Tournament}: the chips of each entrant and the last stage it played.
+ * <p>
+ * The standings are held in atomic arrays indexed by the entrant. Every table writes the chips of its own entrants
+ * after each round, and as an entrant sits at a single table in a stage the tables never write the same entries, so
+ * the standings are merged without any lock. The leaderboard can be read from any thread while the tournament runs,
+ * each entry being as of the last round published by its table.
+ */
+public final class Leaderboard {
+    private final AtomicLongArray chips;
+
+    private final AtomicIntegerArray stages;
+
+    private final AtomicLong roundsPlayed = new AtomicLong();
+
+    private volatile int stage;
+
+    Leaderboard(int entrants) {
+        chips = new AtomicLongArray(entrants);
+        stages = new AtomicIntegerArray(entrants);
+    }
+
+    /**
+     * Publishes the chips of an entrant, to be seen by the readers shortly.
+     *
+     * @param entrant the entrant
+     * @param value the chips
+     */
+    void publish(int entrant, double value) {
+        chips.lazySet(entrant, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Starts a stage for the entrants which advanced to it.
+     *
+     * @param stage the stage
+     * @param entrants the entrants playing the stage
+     */
+    void startStage(int stage, int[] entrants) {
+        for (int entrant : entrants) {
+            stages.set(entrant, stage);
+        }
+        this.stage = stage;
+    }
+
+    void roundsPlayed(long rounds) {
+        roundsPlayed.addAndGet(rounds);
+    }
+
+    public int size() {
+        return chips.length();
+    }
+
+    public double getChips(int entrant) {
+        return Double.longBitsToDouble(chips.get(entrant));
+    }
+
+    /**
+     * The last stage played by the entrant, the first being 0.
+     *
+     * @param entrant the entrant
+     * @return      the stage
+     */
+    public int getStage(int entrant) {
+        return stages.get(entrant);
+    }
+
+    /**
+     * The stage being played, or the final stage once the tournament is over.
+     *
+     * @return      the stage
+     */
+    public int getStage() {
+        return stage;
+    }
+
+    /**
+     * Number of rounds played by the tables finished so far.
+     *
+     * @return      the number of rounds
+     */
+    public long getRoundsPlayed() {
+        return roundsPlayed.get();
+    }
+
+    /**
+     * The leading entrants, ranked by the stage they reached and then by their chips. The standings are copied first,
+     * so the ranking is consistent even while the tables publish.
+     *
+     * @param count the number of entrants
+     * @return      the entrants, the leader first
+     */
+    public List<Integer> top(int count) {
+        final int size = size();
+        final int[] reached = new int[size];
+        final double[] standing = new double[size];
+        for (int entrant = 0; entrant < size; entrant++) {
+            reached[entrant] = getStage(entrant);
+            standing[entrant] = getChips(entrant);
+        }
+        return new Ordering<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                if (reached[left] != reached[right]) {
+                    return (reached[left] > reached[right]) ? -1 : 1;
+                }
+                int compare = Double.compare(standing[right], standing[left]);
+                return (compare != 0) ? compare : left.compareTo(right);
+            }
+        }.leastOf(ContiguousSet.create(Range.closedOpen(0, size), DiscreteDomain.integers()), count);
+    }
+}
@@ -0,0 +1,741 @@
+package cards.blackjack;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cards.blackjack.Blackjack.Action;
+
+import com.google.common.base.Function;
+
+/**
+ * Non-blocking TCP front end of a {@link GameServer}, letting remote players open and join tables, take actions and
+ * follow the tables they joined.
+ * <p>
+ * A single thread runs a selector over all the connections and only parses the requests and writes the replies. The
+ * actions are run by the tables of the game server, which render the table after each action with a
+ * {@link BinaryStateEncoder} and hand the state back to the selector thread to be pushed to every connection
+ * following the table.
+ * <p>
+ * The protocol is made of frames: a u16 length of the rest of the frame, a u8 type and the payload, all big endian.
+ * <pre>
+ * OPEN    0x01 : u8 players, u8 decks, u32 chips    - opens a table and follows it, replied with OPENED
+ * JOIN    0x02 : u32 table                          - follows the table, replied with its STATE
+ * ACTION  0x03 : u32 table, u8 opcode, u16 params, u32 param...
+ *                                                   - takes the action, see {@link Action#getOpcode()}, the STATE
+ *                                                     after it being pushed to all the connections following the table
+ * LEAVE   0x04 : u32 table                          - stops following the table
+ * OPENED  0x81 : u32 table
+ * STATE   0x82 : u32 table, the table as written by the {@link BinaryStateEncoder}
+ * ERROR   0x83 : u8 type of the request refused, UTF-8 message
+ * </pre>
+ * The chips of a table and the bets of a DEAL have to be positive, and no bet can be more than the chips of its
+ * seat, or the request is refused with an ERROR.
+ * <p>
+ * Any connection following a table can take the action of the seat whose turn it is, the server does not tell the
+ * players apart. A table opened by a connection is closed as soon as no connection follows it any more, e.g. when
+ * its players have left or disconnected.
+ * <p>
+ * The memory held by a connection is bounded: requests are limited to {@link #MAX_REQUEST} bytes, a connection
+ * follows at most {@link #MAX_TABLES} tables, at most {@link #MAX_OPENED} of the tables it opened are open at a time,
+ * and the replies are written from a buffer of {@link #BUFFER_SIZE} bytes. At most {@link #MAX_IN_FLIGHT} requests
+ * of a connection are queued on the tables at a time, the connection not being read any further till they are
+ * answered. The buffers are only borrowed from a pool while a request is partly read or a reply partly written, so
+ * idle connections hold no buffer. A connection too slow to take the states pushed to it is closed.
+ */
+public class NetworkServer implements Closeable {
+    /* Types of the frames */
+
+    public static final int OPEN = 0x01;
+
+    public static final int JOIN = 0x02;
+
+    public static final int ACTION = 0x03;
+
+    public static final int LEAVE = 0x04;
+
+    public static final int OPENED = 0x81;
+
+    public static final int STATE = 0x82;
+
+    public static final int ERROR = 0x83;
+
+    /**
+     * Length of the header of a frame, the u16 length.
+     */
+    public static final int HEADER = 2;
+
+    /**
+     * Longest request accepted, including the header.
+     */
+    public static final int MAX_REQUEST = 1024;
+
+    /**
+     * Size of the buffers the replies are written from, also the longest reply.
+     */
+    public static final int BUFFER_SIZE = 16384;
+
+    /**
+     * Most tables a connection can follow.
+     */
+    public static final int MAX_TABLES = 16;
+
+    /**
+     * Most tables opened by a connection which are still open.
+     */
+    public static final int MAX_OPENED = 4;
+
+    /**
+     * Most requests of a connection queued on the tables and not answered yet.
+     */
+    public static final int MAX_IN_FLIGHT = 8;
+
+    /**
+     * Connections waiting to be accepted before new ones are refused, deep enough for bursts of players connecting.
+     */
+    private static final int BACKLOG = 1024;
+
+    /**
+     * Most buffers kept in the pools while not borrowed.
+     */
+    private static final int MAX_POOLED = 1024;
+
+    private static final int[] NO_PARAMS = new int[0];
+
+    /**
+     * Buffer rendering the tables, one for each thread of the game server.
+     */
+    private static final ThreadLocal<ByteBuffer> RENDER_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+    };
+
+    private final GameServer games;
+
+    private final Selector selector;
+
+    private final ServerSocketChannel server;
+
+    private final SelectionKey acceptKey;
+
+    /**
+     * Frames handed over by the tables to the selector thread.
+     */
+    private final Queue<Push> pushes = new ConcurrentLinkedQueue<Push>();
+
+    /**
+     * Whether the selector was woken up for the pushes queued and has not drained them yet.
+     */
+    private final AtomicBoolean wakeup = new AtomicBoolean();
+
+    /* Confined to the selector thread */
+
+    /**
+     * Connections following each table.
+     */
+    private final Map<Integer, List<Connection>> followers = new HashMap<Integer, List<Connection>>();
+
+    /**
+     * Connection which opened each table still open, the tables being closed when no longer followed.
+     */
+    private final Map<Integer, Connection> openers = new HashMap<Integer, Connection>();
+
+    private final ArrayDeque<ByteBuffer> requestBuffers = new ArrayDeque<ByteBuffer>();
+
+    private final ArrayDeque<ByteBuffer> replyBuffers = new ArrayDeque<ByteBuffer>();
+
+    private int connections;
+
+    private volatile boolean closed;
+
+    /**
+     * @param games the tables served
+     * @param address the address to listen on, e.g. a loopback address with port 0 to pick any free port
+     * @throws IOException if the address could not be bound
+     */
+    public NetworkServer(GameServer games, InetSocketAddress address) throws IOException {
+        this.games = games;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.bind(address, BACKLOG);
+        acceptKey = server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Serves a game server on the port given, 7000 by default.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 7000;
+        GameServer games = new GameServer();
+        NetworkServer server = new NetworkServer(games, new InetSocketAddress(port));
+        System.out.println("Serving blackjack on port " + server.getPort());
+        try {
+            server.run();
+        } finally {
+            games.shutdown();
+        }
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Number of connections open. Only exact when read from the selector thread.
+     *
+     * @return      the number of connections
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * Serves on a new daemon thread.
+     *
+     * @return      the thread
+     */
+    public Thread start() {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    NetworkServer.this.run();
+                } catch (IOException e) {
+                    throw new IllegalStateException("The network server stopped", e);
+                }
+            }
+        }, "blackjack-network");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Serves on the calling thread till closed.
+     *
+     * @throws IOException if the selector failed
+     */
+    public void run() throws IOException {
+        try {
+            while (!closed) {
+                selector.select();
+                wakeup.set(false);
+                Push push;
+                while ((push = pushes.poll()) != null) {
+                    deliver(push);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Closed from another thread
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Stops serving and closes the connections. The game server is left running.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Accepts the connections pending. Out of descriptors, stops accepting till a connection is closed, the players
+     * left waiting in the backlog meanwhile.
+     */
+    private void accept() throws IOException {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                acceptKey.interestOps(0);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            Connection connection = new Connection(channel);
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                channel.close();
+                continue;
+            }
+            connections++;
+        }
+    }
+
+    /**
+     * Hands a frame over to the selector thread, from the thread of a table.
+     */
+    private void push(Push push) {
+        pushes.offer(push);
+        if (wakeup.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void deliver(Push push) {
+        if (push.to != null) {
+            push.to.reply(push.frame, 0, push.frame.length);
+        } else {
+            List<Connection> following = followers.get(push.tableId);
+            if (following != null) {
+                // A copy, as a connection too slow for the push is closed and stops following
+                for (Connection connection : following.toArray(new Connection[following.size()])) {
+                    connection.reply(push.frame, 0, push.frame.length);
+                }
+            }
+        }
+        push.from.answered();
+    }
+
+    /**
+     * Renders the table into a STATE frame on the thread of the table.
+     */
+    private static byte[] render(int tableId, Blackjack game) {
+        ByteBuffer buffer = RENDER_BUFFER.get();
+        buffer.clear();
+        buffer.position(HEADER);
+        buffer.put((byte) STATE).putInt(tableId);
+        try {
+            game.accept(new BinaryStateEncoder(buffer));
+        } catch (BufferOverflowException e) {
+            throw new IllegalStateException("The table is too large to be sent");
+        }
+        return frame(buffer);
+    }
+
+    private static byte[] error(int type, String message) {
+        byte[] text = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + 2 + Math.min(text.length, MAX_REQUEST));
+        buffer.position(HEADER);
+        buffer.put((byte) ERROR).put((byte) type).put(text, 0, buffer.remaining());
+        return frame(buffer);
+    }
+
+    /**
+     * Ends a frame written from the header on, filling in its length.
+     */
+    private static byte[] frame(ByteBuffer buffer) {
+        buffer.putShort(0, (short) (buffer.position() - HEADER));
+        byte[] frame = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(frame);
+        return frame;
+    }
+
+    private static ByteBuffer borrow(ArrayDeque<ByteBuffer> pool, int size) {
+        ByteBuffer buffer = pool.poll();
+        return (buffer != null) ? buffer : ByteBuffer.allocate(size);
+    }
+
+    private static void release(ArrayDeque<ByteBuffer> pool, ByteBuffer buffer) {
+        if (pool.size() < MAX_POOLED) {
+            buffer.clear();
+            pool.push(buffer);
+        }
+    }
+
+    /**
+     * A frame answering the request of a connection, for that connection or for the connections following a table.
+     */
+    private static final class Push {
+        private final int tableId;
+
+        private final Connection from;
+
+        private final Connection to;
+
+        private final byte[] frame;
+
+        Push(int tableId, Connection from, Connection to, byte[] frame) {
+            this.tableId = tableId;
+            this.from = from;
+            this.to = to;
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * A connected player. Confined to the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+
+        private SelectionKey key;
+
+        /**
+         * Request partly read, if any.
+         */
+        private ByteBuffer request;
+
+        /**
+         * Replies not written yet, if any.
+         */
+        private ByteBuffer replies;
+
+        private final List<Integer> following = new ArrayList<Integer>(2);
+
+        /**
+         * Number of the tables opened by the connection which are still open.
+         */
+        private int opened;
+
+        /**
+         * Number of requests queued on the tables and not answered yet.
+         */
+        private int inFlight;
+
+        private boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            if (request == null) {
+                request = borrow(requestBuffers, MAX_REQUEST);
+            }
+            int read = channel.read(request);
+            parse();
+            if (read < 0 && !closed) {
+                close();
+            }
+        }
+
+        /**
+         * Handles the requests read, till too many are in flight.
+         */
+        private void parse() {
+            request.flip();
+            while (!closed && inFlight < MAX_IN_FLIGHT && request.remaining() >= HEADER) {
+                int length = request.getShort(request.position()) & 0xFFFF;
+                if (length == 0 || length > MAX_REQUEST - HEADER) {
+                    reply(error(0, "Invalid frame length : " + length));
+                    close();
+                    return;
+                }
+                if (request.remaining() < HEADER + length) {
+                    break;
+                }
+                int end = request.position() + HEADER + length;
+                request.position(request.position() + HEADER);
+                ByteBuffer frame = request.slice();
+                frame.limit(length);
+                request.position(end);
+                handle(frame);
+            }
+            if (closed) {
+                return;
+            }
+            if (request.hasRemaining()) {
+                request.compact();
+            } else {
+                release(requestBuffers, request);
+                request = null;
+            }
+            updateInterest();
+        }
+
+        /**
+         * Counts a request answered, reading the connection again once few enough are in flight.
+         */
+        void answered() {
+            boolean paused = inFlight-- >= MAX_IN_FLIGHT;
+            if (paused && !closed) {
+                if (request != null) {
+                    parse();
+                } else {
+                    updateInterest();
+                }
+            }
+        }
+
+        /**
+         * Reads while few enough requests are in flight, and writes while replies are pending.
+         */
+        private void updateInterest() {
+            if (!closed) {
+                key.interestOps(((inFlight < MAX_IN_FLIGHT) ? SelectionKey.OP_READ : 0)
+                        | ((replies != null) ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+
+        private void handle(ByteBuffer frame) {
+            int type = frame.get() & 0xFF;
+            try {
+                switch (type) {
+                    case OPEN:
+                        open(frame.get() & 0xFF, frame.get() & 0xFF, frame.getInt());
+                        break;
+                    case JOIN:
+                        join(frame.getInt());
+                        break;
+                    case ACTION:
+                        action(frame);
+                        break;
+                    case LEAVE:
+                        Integer tableId = frame.getInt();
+                        if (following.remove(tableId)) {
+                            unfollow(tableId);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown request : " + type);
+                }
+            } catch (RuntimeException e) {
+                // Malformed frames underflow, refused requests throw
+                reply(error(type, e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+        }
+
+        private void open(int players, int decks, int chips) {
+            if (players == 0) {
+                throw new IllegalArgumentException("A table needs at least a player");
+            }
+            // Read as a signed int, chips of 2^31 or more are negative
+            if (chips <= 0) {
+                throw new IllegalArgumentException("The chips must be positive : " + (chips & 0xFFFFFFFFL));
+            }
+            checkFollow();
+            if (opened >= MAX_OPENED) {
+                throw new IllegalStateException("A connection can keep at most " + MAX_OPENED + " tables open");
+            }
+            int tableId = games.openTable(players, chips, TableRules.builder().decks(decks).build());
+            opened++;
+            openers.put(tableId, this);
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER + 5);
+            buffer.position(HEADER);
+            buffer.put((byte) OPENED).putInt(tableId);
+            reply(frame(buffer));
+            follow(tableId);
+        }
+
+        private void join(final int tableId) {
+            boolean follows = following.contains(tableId);
+            if (!follows) {
+                checkFollow();
+            }
+            final Connection connection = this;
+            games.enqueue(tableId, new Function<Blackjack, Void>() {
+                @Override
+                public Void apply(Blackjack game) {
+                    try {
+                        push(new Push(tableId, connection, connection, render(tableId, game)));
+                    } catch (RuntimeException e) {
+                        push(new Push(tableId, connection, connection, error(JOIN, e.getMessage())));
+                    }
+                    return null;
+                }
+            });
+            inFlight++;
+            if (!follows) {
+                follow(tableId);
+            }
+        }
+
+        private void checkFollow() {
+            if (following.size() >= MAX_TABLES) {
+                throw new IllegalStateException("A connection can follow at most " + MAX_TABLES + " tables");
+            }
+        }
+
+        private void follow(int tableId) {
+            following.add(tableId);
+            List<Connection> connections = followers.get(tableId);
+            if (connections == null) {
+                connections = new ArrayList<Connection>(4);
+                followers.put(tableId, connections);
+            }
+            connections.add(this);
+        }
+
+        private void action(ByteBuffer frame) {
+            final int tableId = frame.getInt();
+            final Action action = Action.fromOpcode(frame.get() & 0xFF);
+            final int[] params = new int[frame.getShort() & 0xFFFF];
+            for (int idx = 0; idx < params.length; idx++) {
+                params[idx] = frame.getInt();
+                if (action == Action.DEAL && params[idx] <= 0) {
+                    throw new IllegalArgumentException("The bets must be positive : " + (params[idx] & 0xFFFFFFFFL));
+                }
+            }
+            final Connection connection = this;
+            games.enqueue(tableId, new Function<Blackjack, Void>() {
+                @Override
+                public Void apply(Blackjack game) {
+                    try {
+                        if (!game.isLegal(action)) {
+                            throw new IllegalStateException(action + " can not be taken while " + game.getState());
+                        }
+                        if (params.length != action.paramsRequired(game)) {
+                            throw new IllegalArgumentException(action + " needs " + action.paramsRequired(game)
+                                    + " parameters");
+                        }
+                        if (action == Action.DEAL) {
+                            checkBets(game, params);
+                        }
+                        game.action(action, (params.length == 0) ? NO_PARAMS : params);
+                        push(new Push(tableId, connection, null, render(tableId, game)));
+                    } catch (RuntimeException e) {
+                        push(new Push(tableId, connection, connection, error(ACTION, e.getMessage())));
+                    }
+                    return null;
+                }
+            });
+            inFlight++;
+        }
+
+        /**
+         * Checks that no player bets more than the chips of the seat.
+         */
+        private void checkBets(Blackjack game, int[] bets) {
+            for (int idx = 0; idx < bets.length; idx++) {
+                BlackjackPlayer player = game.players().get(idx + 1);
+                if (bets[idx] > player.getChips()) {
+                    throw new IllegalArgumentException("The bet of " + player.getName() + " is more than its chips : "
+                            + bets[idx]);
+                }
+            }
+        }
+
+        /**
+         * Stops following the table, closing it if it was opened over the network and no one follows it any more.
+         */
+        private void unfollow(Integer tableId) {
+            List<Connection> connections = followers.get(tableId);
+            if (connections != null) {
+                connections.remove(this);
+                if (!connections.isEmpty()) {
+                    return;
+                }
+                followers.remove(tableId);
+            }
+            Connection opener = openers.remove(tableId);
+            if (opener != null) {
+                opener.opened--;
+                games.closeTable(tableId);
+            }
+        }
+
+        void reply(byte[] frame) {
+            reply(frame, 0, frame.length);
+        }
+
+        /**
+         * Queues a frame to be written, closing the connection if it can not take it.
+         */
+        void reply(byte[] frame, int offset, int length) {
+            if (closed) {
+                return;
+            }
+            if (replies == null) {
+                replies = borrow(replyBuffers, BUFFER_SIZE);
+            }
+            if (replies.remaining() < length) {
+                close();
+                return;
+            }
+            replies.put(frame, offset, length);
+            try {
+                write();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void write() throws IOException {
+            if (replies == null) {
+                return;
+            }
+            replies.flip();
+            channel.write(replies);
+            if (replies.hasRemaining()) {
+                replies.compact();
+            } else {
+                release(replyBuffers, replies);
+                replies = null;
+            }
+            updateInterest();
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections--;
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+            for (Integer tableId : following) {
+                unfollow(tableId);
+            }
+            following.clear();
+            if (request != null) {
+                release(requestBuffers, request);
+                request = null;
+            }
+            if (replies != null) {
+                release(replyBuffers, replies);
+                replies = null;
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package cards.blackjack;
+
+import cards.blackjack.Blackjack.Action;
+import cards.common.Rank;
+
+/**
+ * Decides the next move of a seat when the game is driven without a console, e.g. by the {@link Simulator}.
+ * <p>
+ * Implementations are called once per decision and should not hold any mutable state, so that a single
+ * instance can be shared by all the tables of a parallel simulation.
+ * Contains default implementations of simple policies exposed as instance variables.
+ */
+public interface PlayerPolicy {
+    /**
+     * Chooses the action for the player whose turn it is.
+     *
+     * @param player the player to take the decision for, always {@link BlackjackPlayer.PlayerState#INPLAY}
+     * @param dealerUpCard the rank of the dealer's visible card
+     * @return      one of {@link Action#HIT}, {@link Action#STAND}, {@link Action#DOUBLEDOWN} if
+     *              {@link BlackjackPlayer#canDoubleDown()} or {@link Action#SPLIT} if {@link BlackjackPlayer#canSplit()}
+     */
+    Action decide(BlackjackPlayer player, Rank dealerUpCard);
+
+    /**
+     * Default implementation policy which keeps hitting until the hand reaches a threshold value.
+     */
+    static class HitBelowPolicy implements PlayerPolicy {
+        private final int threshold;
+
+        HitBelowPolicy(int threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public Action decide(BlackjackPlayer player, Rank dealerUpCard) {
+            return (player.softValue() < threshold) ? Action.HIT : Action.STAND;
+        }
+    }
+
+    /**
+     * Default implementation policy which only hits while the next card cannot bust the hand.
+     */
+    static class NeverBustPolicy implements PlayerPolicy {
+        @Override
+        public Action decide(BlackjackPlayer player, Rank dealerUpCard) {
+            return (player.value() < 12) ? Action.HIT : Action.STAND;
+        }
+    }
+
+    /** Mimics the dealer by hitting till 17 */
+    PlayerPolicy MIMIC_DEALER = new HitBelowPolicy(17);
+    /** Only hits when the hand cannot bust */
+    PlayerPolicy NEVER_BUST = new NeverBustPolicy();
+}
@@ -0,0 +1,406 @@
+package cards.blackjack;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.Rule;
+import cards.common.Cards;
+import cards.common.Shoe;
+
+/**
+ * Append-only binary journal of the events of a {@link Blackjack} table.
+ * <p>
+ * A table started with a journal, see {@link Blackjack#setJournal(RoundJournal)}, records the table it was opened
+ * with, every action taken through {@link Blackjack#action(Action, int[])}, every card dealt and the rule each seat
+ * was settled by. Each event is a tag byte followed by its fields as variable length integers, so most events take
+ * 2 or 3 bytes. The order of the shoe is recorded with the table and every value drawn to shuffle it again, so
+ * {@link JournalReplayer} rebuilds the table from the journal with the same shoe.
+ */
+public class RoundJournal {
+    /**
+     * Events in the journal.
+     */
+    public enum Event {
+        /** The table the journal was started on: players, chips, rules and the order of the shoe */
+        TABLE,
+        /** An action taken with its parameters */
+        ACTION,
+        /** A card dealt to a seat, the dealer being seat 0 */
+        CARD,
+        /** The rule a hand of a seat was settled by, once for each hand of a split seat */
+        SETTLE,
+        /** The last action failed with an exception */
+        ERROR,
+        /** A value drawn from the source of randomness to shuffle the shoe */
+        SHUFFLE
+    }
+
+    private static final Event[] EVENTS = Event.values();
+
+    private static final Action[] ACTIONS = Action.values();
+
+    private static final Rule[] RULES = Rule.values();
+
+    /* Flags of the boolean rules of the table */
+
+    private static final int SPLIT_ACES = 2;
+
+    private static final int DOUBLE_AFTER_SPLIT = 4;
+
+    /**
+     * Shift of the {@link TableRules.DealerStand} ordinal in the flags.
+     */
+    private static final int DEALER_STAND_SHIFT = 3;
+
+    private static final TableRules.DealerStand[] DEALER_STANDS = TableRules.DealerStand.values();
+
+    private byte[] buffer;
+
+    private int size;
+
+    public RoundJournal() {
+        this(4096);
+    }
+
+    /**
+     * @param capacity the initial capacity in bytes
+     */
+    public RoundJournal(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    private RoundJournal(byte[] buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Reads a journal written by {@link #writeTo(OutputStream)}.
+     *
+     * @param in the stream
+     * @return      the journal
+     * @throws IOException if the stream could not be read
+     */
+    public static RoundJournal readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return new RoundJournal(bytes, bytes.length);
+    }
+
+    /**
+     * Writes the journal as its length followed by the events.
+     *
+     * @param out the stream
+     * @throws IOException if the stream could not be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(size >>> 24);
+        out.write(size >>> 16);
+        out.write(size >>> 8);
+        out.write(size);
+        out.write(buffer, 0, size);
+    }
+
+    /**
+     * Size of the journal in bytes.
+     *
+     * @return      the size
+     */
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public Reader reader() {
+        return new Reader();
+    }
+
+    void table(int numPlayers, int chips, TableRules rules, Shoe shoe) {
+        byte[] order = shoe.order();
+        ensureCapacity(58 + order.length);
+        buffer[size++] = (byte) Event.TABLE.ordinal();
+        writeVarInt(numPlayers);
+        writeVarInt(chips);
+        writeVarInt(rules.getNumDecks());
+        writeDouble(rules.getPenetration());
+        buffer[size++] = (byte) ((rules.getDealerStand().ordinal() << DEALER_STAND_SHIFT)
+                | (rules.isSplitAces() ? SPLIT_ACES : 0) | (rules.isDoubleAfterSplit() ? DOUBLE_AFTER_SPLIT : 0));
+        writeDouble(rules.getBlackjackWinFactor());
+        writeVarInt(rules.getMaxSplitHands());
+        writeVarInt(shoe.getCutCard());
+        writeVarInt(shoe.remaining());
+        System.arraycopy(order, 0, buffer, size, order.length);
+        size += order.length;
+    }
+
+    void action(Action action, int[] params) {
+        int count = (params == null) ? 0 : params.length;
+        ensureCapacity(2 + 5 * (count + 1));
+        buffer[size++] = (byte) Event.ACTION.ordinal();
+        buffer[size++] = (byte) action.ordinal();
+        writeVarInt(count);
+        for (int idx = 0; idx < count; idx++) {
+            // Zig-zag so that small negative values stay short
+            writeVarInt((params[idx] << 1) ^ (params[idx] >> 31));
+        }
+    }
+
+    void card(int seat, int code) {
+        ensureCapacity(7);
+        buffer[size++] = (byte) Event.CARD.ordinal();
+        writeVarInt(seat);
+        buffer[size++] = (byte) code;
+    }
+
+    void settle(int seat, Rule rule) {
+        ensureCapacity(7);
+        buffer[size++] = (byte) Event.SETTLE.ordinal();
+        writeVarInt(seat);
+        buffer[size++] = (byte) rule.ordinal();
+    }
+
+    void shuffle(int value) {
+        ensureCapacity(6);
+        buffer[size++] = (byte) Event.SHUFFLE.ordinal();
+        writeVarInt(value);
+    }
+
+    void error() {
+        ensureCapacity(1);
+        buffer[size++] = (byte) Event.ERROR.ordinal();
+    }
+
+    /**
+     * Offset of the first byte this journal differs from the other on, from the given offset to the end of this
+     * journal.
+     *
+     * @param other the other journal
+     * @param from the offset to compare from
+     * @return      the offset or -1 if the other journal has the same bytes
+     */
+    int mismatch(RoundJournal other, int from) {
+        for (int idx = from; idx < size; idx++) {
+            if (idx >= other.size || buffer[idx] != other.buffer[idx]) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * Reads the events in the order they were recorded. The fields of the last event read are available through
+     * the getters.
+     */
+    public class Reader {
+        private int position;
+
+        private Event event;
+
+        private int seat;
+
+        private int card;
+
+        private Action action;
+
+        private int[] params;
+
+        private Rule rule;
+
+        private int numPlayers;
+
+        private int chips;
+
+        private TableRules rules;
+
+        private int cutCard;
+
+        private int shoeSize;
+
+        private byte[] shoe;
+
+        private int shuffle;
+
+        /**
+         * Reads the next event.
+         *
+         * @return      the event or null at the end of the journal
+         */
+        public Event next() {
+            if (position >= size) {
+                return event = null;
+            }
+            event = EVENTS[buffer[position++]];
+            switch (event) {
+                case TABLE:
+                    numPlayers = readVarInt();
+                    chips = readVarInt();
+                    int numDecks = readVarInt();
+                    double penetration = readDouble();
+                    int flags = buffer[position++];
+                    rules = TableRules.builder().decks(numDecks).penetration(penetration)
+                            .dealerStand(DEALER_STANDS[flags >>> DEALER_STAND_SHIFT])
+                            .splitAces((flags & SPLIT_ACES) != 0)
+                            .doubleAfterSplit((flags & DOUBLE_AFTER_SPLIT) != 0)
+                            .blackjackWinFactor(readDouble()).maxSplitHands(readVarInt()).build();
+                    cutCard = readVarInt();
+                    shoeSize = readVarInt();
+                    shoe = Arrays.copyOfRange(buffer, position, position + numDecks * Cards.DECK_SIZE);
+                    position += shoe.length;
+                    break;
+                case ACTION:
+                    action = ACTIONS[buffer[position++]];
+                    params = new int[readVarInt()];
+                    for (int idx = 0; idx < params.length; idx++) {
+                        int value = readVarInt();
+                        params[idx] = (value >>> 1) ^ -(value & 1);
+                    }
+                    break;
+                case CARD:
+                    seat = readVarInt();
+                    card = buffer[position++];
+                    break;
+                case SETTLE:
+                    seat = readVarInt();
+                    rule = RULES[buffer[position++]];
+                    break;
+                case SHUFFLE:
+                    shuffle = readVarInt();
+                    break;
+                default:
+                    break;
+            }
+            return event;
+        }
+
+        /**
+         * Offset of the next event in the journal.
+         *
+         * @return      the offset in bytes
+         */
+        public int position() {
+            return position;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte next = buffer[position++];
+                value |= (next & 0x7F) << shift;
+                if (next >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private double readDouble() {
+            long bits = 0;
+            for (int idx = 0; idx < 8; idx++) {
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        /* Getters for the fields of the last event */
+
+        public Event getEvent() {
+            return event;
+        }
+
+        public int getSeat() {
+            return seat;
+        }
+
+        public int getCard() {
+            return card;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public int[] getParams() {
+            return params;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        public int getNumPlayers() {
+            return numPlayers;
+        }
+
+        public int getChips() {
+            return chips;
+        }
+
+        /**
+         * The rules of the table. The values of the ranks are not recorded and default to the blackjack values.
+         *
+         * @return      the rules
+         */
+        public TableRules getRules() {
+            return rules;
+        }
+
+        /**
+         * Number of cards left behind the cut card of the shoe the table was started with.
+         *
+         * @return      the number of cards
+         */
+        public int getCutCard() {
+            return cutCard;
+        }
+
+        /**
+         * Number of cards left in the shoe the table was started with.
+         *
+         * @return      the number of cards
+         */
+        public int getShoeSize() {
+            return shoeSize;
+        }
+
+        /**
+         * Order of the shoe the table was started with, see {@link Shoe#order()}.
+         *
+         * @return      the card codes
+         */
+        public byte[] getShoe() {
+            return shoe;
+        }
+
+        public int getShuffle() {
+            return shuffle;
+        }
+    }
+}
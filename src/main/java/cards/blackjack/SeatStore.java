@@ -0,0 +1,225 @@
+package cards.blackjack;
+
+import cards.blackjack.Blackjack.Rule;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+import cards.common.Hand;
+
+/**
+ * State of the seats of a table held in parallel primitive arrays, so that the checks and the settlement of a round
+ * run over all the seats of a wide table in tight loops without following a player object per seat.
+ * <p>
+ * The chips, the number of hands and the hand in play are held by seat, the dealer being seat 0. The state, bet,
+ * settling rule and best total of the hands are held by slot, each seat having a slot for each of the most hands it
+ * can split into, i.e. the slot of a hand is <code>seat * maxHands + hand</code>. A {@link BlackjackPlayer} is a view
+ * over the slots of a single seat.
+ * <p>
+ * The totals are those of the cards dealt by the game through {@link BlackjackPlayer#addCard(int)}, a hand
+ * changed directly has its total refreshed with {@link #updateTotal(int)}.
+ */
+final class SeatStore {
+    private static final PlayerState[] STATES = PlayerState.values();
+
+    private static final Rule[] RULES = Rule.values();
+
+    /**
+     * Rule of a hand not settled.
+     */
+    private static final byte NO_RULE = -1;
+
+    private final TableRules rules;
+
+    private final int seats;
+
+    private final int maxHands;
+
+    /* By seat */
+
+    private final double[] chips;
+
+    private final byte[] handCounts;
+
+    /**
+     * Index of the hand in play of each seat.
+     */
+    private final byte[] activeHands;
+
+    private final boolean[] stateVisible;
+
+    /* By slot */
+
+    /**
+     * Pool of the hands, created when a seat first holds the hand.
+     */
+    private final Hand[] hands;
+
+    private final byte[] states;
+
+    private final int[] bets;
+
+    /**
+     * Ordinals of the rules the hands were settled by, {@link #NO_RULE} till settled.
+     */
+    private final byte[] handRules;
+
+    /**
+     * Best totals of the hands, counting an ace as 11 if it does not bust the hand.
+     */
+    private final byte[] totals;
+
+    /**
+     * @param rules the rules of the table
+     * @param seats the number of seats including the dealer
+     */
+    SeatStore(TableRules rules, int seats) {
+        if (seats < 1) {
+            throw new IllegalArgumentException("At least a seat is needed : " + seats);
+        }
+        this.rules = rules;
+        this.seats = seats;
+        this.maxHands = rules.getMaxSplitHands();
+        chips = new double[seats];
+        handCounts = new byte[seats];
+        activeHands = new byte[seats];
+        stateVisible = new boolean[seats];
+        hands = new Hand[seats * maxHands];
+        states = new byte[seats * maxHands];
+        bets = new int[seats * maxHands];
+        handRules = new byte[seats * maxHands];
+        totals = new byte[seats * maxHands];
+        for (int seat = 0; seat < seats; seat++) {
+            hands[seat * maxHands] = new Hand(rules.getRankValue());
+            handCounts[seat] = 1;
+            stateVisible[seat] = true;
+        }
+    }
+
+    TableRules getRules() {
+        return rules;
+    }
+
+    int getSeats() {
+        return seats;
+    }
+
+    int getMaxHands() {
+        return maxHands;
+    }
+
+    int slot(int seat, int hand) {
+        return seat * maxHands + hand;
+    }
+
+    /* By seat */
+
+    double getChips(int seat) {
+        return chips[seat];
+    }
+
+    void setChips(int seat, double value) {
+        chips[seat] = value;
+    }
+
+    int getHandCount(int seat) {
+        return handCounts[seat];
+    }
+
+    void setHandCount(int seat, int count) {
+        handCounts[seat] = (byte) count;
+    }
+
+    int getActiveHand(int seat) {
+        return activeHands[seat];
+    }
+
+    void setActiveHand(int seat, int hand) {
+        activeHands[seat] = (byte) hand;
+    }
+
+    boolean isStateVisible(int seat) {
+        return stateVisible[seat];
+    }
+
+    void setStateVisible(int seat, boolean visible) {
+        stateVisible[seat] = visible;
+    }
+
+    /* By slot */
+
+    /**
+     * The hand of the slot, taken from the pool.
+     *
+     * @param slot the slot
+     * @return      the hand
+     */
+    Hand hand(int slot) {
+        if (hands[slot] == null) {
+            hands[slot] = new Hand(rules.getRankValue());
+        }
+        return hands[slot];
+    }
+
+    void setHand(int slot, Hand hand) {
+        hands[slot] = hand;
+        updateTotal(slot);
+    }
+
+    PlayerState getState(int slot) {
+        return STATES[states[slot]];
+    }
+
+    void setState(int slot, PlayerState state) {
+        states[slot] = (byte) state.ordinal();
+    }
+
+    int getBet(int slot) {
+        return bets[slot];
+    }
+
+    void setBet(int slot, int bet) {
+        bets[slot] = bet;
+    }
+
+    Rule getRule(int slot) {
+        return (handRules[slot] == NO_RULE) ? null : RULES[handRules[slot]];
+    }
+
+    void setRule(int slot, Rule rule) {
+        handRules[slot] = (rule == null) ? NO_RULE : (byte) rule.ordinal();
+    }
+
+    int getTotal(int slot) {
+        return totals[slot];
+    }
+
+    /**
+     * Takes the total of the slot from its hand again.
+     *
+     * @param slot the slot
+     */
+    void updateTotal(int slot) {
+        Hand hand = hands[slot];
+        int value = hand.value();
+        totals[slot] = (byte) ((hand.aceCount() > 0 && value + 10 <= 21) ? value + 10 : value);
+    }
+
+    /**
+     * Whether all the hands held by the seats from the given one on have the state.
+     *
+     * @param fromSeat the first seat checked
+     * @param state the state
+     * @return      true if all the hands have the state
+     */
+    boolean allHands(int fromSeat, PlayerState state) {
+        byte ordinal = (byte) state.ordinal();
+        for (int seat = fromSeat; seat < seats; seat++) {
+            int slot = seat * maxHands;
+            int end = slot + handCounts[seat];
+            for (; slot < end; slot++) {
+                if (states[slot] != ordinal) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,322 @@
+package cards.blackjack;
+
+import cards.blackjack.Blackjack.Rule;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+import cards.common.Rank;
+
+/**
+ * Aggregated outcome of the rounds played by a {@link Simulator}.
+ * <p>
+ * Besides the counts, the mean and variance of the chips won or lost per hand are kept with Welford's streaming
+ * algorithm, overall and by the dealer's up card, along with the counts of the final states and of the rules
+ * settling the hands. Recording a hand updates a fixed set of counters without allocating, so a result can be fed
+ * any number of rounds.
+ * <p>
+ * A result is filled by a single simulation engine and is not thread safe. Results of engines running in
+ * parallel are combined with {@link #merge(SimulationResult)} once they are done.
+ */
+public final class SimulationResult {
+    /**
+     * Standard normal quantile of a 95% confidence interval.
+     */
+    public static final double Z_95 = 1.959964;
+
+    private static final int NUM_RANKS = Rank.values().length;
+
+    /**
+     * Number of rounds played.
+     */
+    private long rounds;
+
+    /**
+     * Number of hands played i.e. rounds times the seats at the table.
+     */
+    private long hands;
+
+    private long wins;
+
+    private long pushes;
+
+    private long losses;
+
+    /**
+     * Number of hands dealt as a 'Blackjack'.
+     */
+    private long blackjacks;
+
+    /**
+     * Total of all the bets placed including doubled bets.
+     */
+    private double wagered;
+
+    /**
+     * Net chips won (positive) or lost (negative) by the players.
+     */
+    private double net;
+
+    /**
+     * Running mean of the chips won or lost per hand.
+     */
+    private double mean;
+
+    /**
+     * Running sum of the squared differences from the mean.
+     */
+    private double m2;
+
+    /**
+     * Number of hands with each final state indexed by the state ordinal, each hand split from a pair counted.
+     */
+    private final long[] states = new long[PlayerState.values().length];
+
+    /**
+     * Number of hands settled by each rule indexed by the rule ordinal, each hand split from a pair counted.
+     */
+    private final long[] rules = new long[Rule.values().length];
+
+    /**
+     * Hands, running mean and squared differences by the dealer's up card, indexed by the rank ordinal.
+     */
+    private final long[] upCardHands = new long[NUM_RANKS];
+
+    private final double[] upCardMean = new double[NUM_RANKS];
+
+    private final double[] upCardM2 = new double[NUM_RANKS];
+
+    /**
+     * Records the outcome of a single hand, along with the hands split from it.
+     *
+     * @param player the player, after the round is settled
+     * @param delta the chips won or lost on the hand and the hands split from it
+     * @param blackjack whether the hand was dealt a 'Blackjack'
+     * @param dealerUpCard the dealer's up card
+     */
+    void record(BlackjackPlayer player, double delta, boolean blackjack, Rank dealerUpCard) {
+        hands++;
+        net += delta;
+        double diff = delta - mean;
+        mean += diff / hands;
+        m2 += diff * (delta - mean);
+
+        int up = dealerUpCard.ordinal();
+        long upHands = ++upCardHands[up];
+        diff = delta - upCardMean[up];
+        upCardMean[up] += diff / upHands;
+        upCardM2[up] += diff * (delta - upCardMean[up]);
+
+        for (int hand = 0; hand < player.getHandCount(); hand++) {
+            wagered += player.getBet(hand);
+            states[player.getState(hand).ordinal()]++;
+            if (player.getRule(hand) != null) {
+                rules[player.getRule(hand).ordinal()]++;
+            }
+        }
+        if (delta > 0) {
+            wins++;
+        } else if (delta < 0) {
+            losses++;
+        } else {
+            pushes++;
+        }
+        if (blackjack) {
+            blackjacks++;
+        }
+    }
+
+    void roundPlayed() {
+        rounds++;
+    }
+
+    /**
+     * Adds the counts of the other result to this one.
+     *
+     * @param other the result to merge
+     * @return      this result
+     */
+    public SimulationResult merge(SimulationResult other) {
+        // Chan's parallel combination of the means and squared differences
+        m2 = combineM2(hands, mean, m2, other.hands, other.mean, other.m2);
+        mean = combineMean(hands, mean, other.hands, other.mean);
+        for (int up = 0; up < NUM_RANKS; up++) {
+            long upHands = upCardHands[up];
+            long otherHands = other.upCardHands[up];
+            upCardM2[up] = combineM2(upHands, upCardMean[up], upCardM2[up],
+                    otherHands, other.upCardMean[up], other.upCardM2[up]);
+            upCardMean[up] = combineMean(upHands, upCardMean[up], otherHands, other.upCardMean[up]);
+            upCardHands[up] += otherHands;
+        }
+        for (int idx = 0; idx < states.length; idx++) {
+            states[idx] += other.states[idx];
+        }
+        for (int idx = 0; idx < rules.length; idx++) {
+            rules[idx] += other.rules[idx];
+        }
+        rounds += other.rounds;
+        hands += other.hands;
+        wins += other.wins;
+        pushes += other.pushes;
+        losses += other.losses;
+        blackjacks += other.blackjacks;
+        wagered += other.wagered;
+        net += other.net;
+        return this;
+    }
+
+    private static double combineMean(long count, double mean, long otherCount, double otherMean) {
+        long total = count + otherCount;
+        return (total == 0) ? 0 : mean + (otherMean - mean) * otherCount / total;
+    }
+
+    private static double combineM2(long count, double mean, double m2, long otherCount, double otherMean,
+            double otherM2) {
+        long total = count + otherCount;
+        if (total == 0) {
+            return 0;
+        }
+        double diff = otherMean - mean;
+        return m2 + otherM2 + diff * diff * ((double) count * otherCount / total);
+    }
+
+    /* Getters */
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    public long getHands() {
+        return hands;
+    }
+
+    public long getWins() {
+        return wins;
+    }
+
+    public long getPushes() {
+        return pushes;
+    }
+
+    public long getLosses() {
+        return losses;
+    }
+
+    public long getBlackjacks() {
+        return blackjacks;
+    }
+
+    public double getWagered() {
+        return wagered;
+    }
+
+    public double getNet() {
+        return net;
+    }
+
+    /**
+     * Expected value of the player per unit of initial bet.
+     *
+     * @return      the expected value
+     */
+    public double getExpectedValue() {
+        return ratio(net, hands);
+    }
+
+    /**
+     * Sample standard deviation of the chips won or lost per hand.
+     *
+     * @return      the standard deviation
+     */
+    public double getStandardDeviation() {
+        return standardDeviation(hands, m2);
+    }
+
+    /**
+     * Half width of the confidence interval of the expected value.
+     *
+     * @param z the standard normal quantile of the confidence level, e.g. {@link #Z_95}
+     * @return      the half width
+     */
+    public double getErrorMargin(double z) {
+        return errorMargin(z, hands, m2);
+    }
+
+    /**
+     * Number of hands which ended in the state, e.g. {@link PlayerState#BUST}.
+     *
+     * @param state the final state
+     * @return      the number of hands
+     */
+    public long getCount(PlayerState state) {
+        return states[state.ordinal()];
+    }
+
+    /**
+     * Number of hands settled by the rule.
+     *
+     * @param rule the rule
+     * @return      the number of hands
+     */
+    public long getCount(Rule rule) {
+        return rules[rule.ordinal()];
+    }
+
+    public long getHands(Rank dealerUpCard) {
+        return upCardHands[dealerUpCard.ordinal()];
+    }
+
+    /**
+     * Expected value of the player per unit of initial bet against the dealer's up card.
+     *
+     * @param dealerUpCard the dealer's up card
+     * @return      the expected value
+     */
+    public double getExpectedValue(Rank dealerUpCard) {
+        return upCardMean[dealerUpCard.ordinal()];
+    }
+
+    /**
+     * Half width of the confidence interval of the expected value against the dealer's up card.
+     *
+     * @param dealerUpCard the dealer's up card
+     * @param z the standard normal quantile of the confidence level, e.g. {@link #Z_95}
+     * @return      the half width
+     */
+    public double getErrorMargin(Rank dealerUpCard, double z) {
+        int up = dealerUpCard.ordinal();
+        return errorMargin(z, upCardHands[up], upCardM2[up]);
+    }
+
+    public double getWinRate() {
+        return ratio(wins, hands);
+    }
+
+    public double getPushRate() {
+        return ratio(pushes, hands);
+    }
+
+    public double getLossRate() {
+        return ratio(losses, hands);
+    }
+
+    public double getBlackjackRate() {
+        return ratio(blackjacks, hands);
+    }
+
+    private static double ratio(double value, long count) {
+        return (count == 0) ? 0 : value / count;
+    }
+
+    private static double standardDeviation(long count, double m2) {
+        return (count < 2) ? 0 : Math.sqrt(m2 / (count - 1));
+    }
+
+    private static double errorMargin(double z, long count, double m2) {
+        return (count < 2) ? 0 : z * standardDeviation(count, m2) / Math.sqrt(count);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Rounds : %d, Hands : %d, EV : %.5f (+/- %.5f), Win : %.4f, Push : %.4f, Loss : %.4f, "
+                + "Blackjack : %.4f", rounds, hands, getExpectedValue(), getErrorMargin(Z_95), getWinRate(),
+                getPushRate(), getLossRate(), getBlackjackRate());
+    }
+}
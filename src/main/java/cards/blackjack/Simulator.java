@@ -0,0 +1,306 @@
+package cards.blackjack;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+import cards.common.Rank;
+import cards.common.SplitMixRandom;
+
+/**
+ * Headless driver playing rounds of {@link Blackjack} with the decisions taken by a {@link PlayerPolicy}.
+ * <p>
+ * Every seat bets a single chip per round, so the expected value reported is per unit bet.
+ * Parallel runs split the rounds over a fork-join pool where each task plays on its own table, so there is
+ * no mutable state shared between the engines.
+ * <p>
+ * Each table shuffles with its own {@link SplitMixRandom} derived from the simulation seed and the position of its
+ * rounds in the run, so a run with the same seed and parallelism is replayed exactly.
+ * <p>
+ * The hands played can be written to a {@link HandHistoryStore}, with the position of the round in the run as its
+ * id.
+ */
+public class Simulator {
+    /**
+     * Rounds played by a single task before the work is not split any further.
+     */
+    private static final long ROUNDS_PER_TASK = 50000;
+
+    private final int numPlayers;
+
+    private final TableRules rules;
+
+    private final PlayerPolicy policy;
+
+    private long seed = ThreadLocalRandom.current().nextLong();
+
+    private HandHistoryStore history;
+
+    private ProgressListener progressListener;
+
+    public Simulator(int numPlayers, int numDecks, PlayerPolicy policy) {
+        this(numPlayers, TableRules.builder().decks(numDecks).build(), policy);
+    }
+
+    /**
+     * @param numPlayers the number of players at each table excluding the dealer
+     * @param rules the rules of the tables
+     * @param policy the decisions of the players
+     */
+    public Simulator(int numPlayers, TableRules rules, PlayerPolicy policy) {
+        this.numPlayers = numPlayers;
+        this.rules = rules;
+        this.policy = policy;
+    }
+
+    /**
+     * Sets the seed the shuffles of the simulation are derived from. Random by default.
+     *
+     * @param seed the seed
+     * @return      this simulator
+     */
+    public Simulator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Writes the hands played to the store.
+     *
+     * @param history the store, with a seat for each player
+     * @return      this simulator
+     */
+    public Simulator setHistory(HandHistoryStore history) {
+        if (history.getSeatsPerRound() != numPlayers) {
+            throw new IllegalArgumentException("The store should have a seat for each of the " + numPlayers
+                    + " players : " + history.getSeatsPerRound());
+        }
+        this.history = history;
+        return this;
+    }
+
+    /**
+     * Reports the progress of the runs to the listener.
+     *
+     * @param progressListener the listener
+     * @return      this simulator
+     */
+    public Simulator setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Plays the rounds on the calling thread.
+     *
+     * @param rounds the number of rounds to play
+     * @return      the aggregated result
+     */
+    public SimulationResult run(long rounds) {
+        return new Engine(0, new Progress(rounds)).play(rounds);
+    }
+
+    /**
+     * Plays the rounds spread over the given number of threads.
+     *
+     * @param rounds the number of rounds to play
+     * @param parallelism the number of threads to use
+     * @return      the aggregated result
+     */
+    public SimulationResult run(long rounds, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new SimulationTask(0, rounds, new Progress(rounds)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits the rounds in halves till small enough to be played by a single engine.
+     */
+    private class SimulationTask extends RecursiveTask<SimulationResult> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Index of the first round of the task within the run.
+         */
+        private final long start;
+
+        private final long rounds;
+
+        private final Progress progress;
+
+        SimulationTask(long start, long rounds, Progress progress) {
+            this.start = start;
+            this.rounds = rounds;
+            this.progress = progress;
+        }
+
+        @Override
+        protected SimulationResult compute() {
+            if (rounds <= ROUNDS_PER_TASK) {
+                return new Engine(start, progress).play(rounds);
+            }
+            SimulationTask left = new SimulationTask(start, rounds / 2, progress);
+            SimulationTask right = new SimulationTask(start + rounds / 2, rounds - rounds / 2, progress);
+            left.fork();
+            return right.compute().merge(left.join());
+        }
+    }
+
+    /**
+     * Listener of the progress of a run.
+     */
+    public interface ProgressListener {
+        /**
+         * Called every 50000 rounds or so, one call at a time.
+         *
+         * @param done the result of the rounds played so far, only valid during the call
+         * @param rounds the number of rounds in the run
+         */
+        void progress(SimulationResult done, long rounds);
+    }
+
+    /**
+     * The rounds played so far in a run, merged from the engines as they go along.
+     */
+    private class Progress {
+        private final long rounds;
+
+        private final SimulationResult done = new SimulationResult();
+
+        Progress(long rounds) {
+            this.rounds = rounds;
+        }
+
+        synchronized void add(SimulationResult played) {
+            done.merge(played);
+            progressListener.progress(done, rounds);
+        }
+    }
+
+    /**
+     * A single table along with the buffers reused for every round. Confined to one thread.
+     */
+    private class Engine {
+        private final Blackjack game;
+
+        private final int[] bets = new int[numPlayers];
+
+        private final double[] chips = new double[numPlayers + 1];
+
+        private final boolean[] blackjacks = new boolean[numPlayers + 1];
+
+        /**
+         * Hands of the round to write to the history, if any.
+         */
+        private final HandHistoryStore.HandRecord[] hands;
+
+        /**
+         * Id of the next round.
+         */
+        private long roundId;
+
+        private final Progress progress;
+
+        /**
+         * @param stream the index of the first round of the engine in the run, also used to derive the seed of
+         * the table
+         * @param progress the progress of the run
+         */
+        Engine(long stream, Progress progress) {
+            game = new Blackjack(numPlayers, 0, rules, new SplitMixRandom(SplitMixRandom.seedFor(seed, stream)));
+            Arrays.fill(bets, 1);
+            roundId = stream;
+            this.progress = progress;
+            hands = (history == null) ? null : new HandHistoryStore.HandRecord[numPlayers + 1];
+            for (int idx = 1; hands != null && idx < hands.length; idx++) {
+                hands[idx] = new HandHistoryStore.HandRecord();
+            }
+        }
+
+        SimulationResult play(long rounds) {
+            if (progressListener == null) {
+                return play(rounds, new SimulationResult());
+            }
+            SimulationResult result = new SimulationResult();
+            for (long played = 0; played < rounds; played += ROUNDS_PER_TASK) {
+                SimulationResult chunk = play(Math.min(ROUNDS_PER_TASK, rounds - played), new SimulationResult());
+                progress.add(chunk);
+                result.merge(chunk);
+            }
+            return result;
+        }
+
+        private SimulationResult play(long rounds, SimulationResult result) {
+            for (long round = 0; round < rounds; round++) {
+                playRound(result);
+                if (hands != null) {
+                    writeHands();
+                }
+                roundId++;
+            }
+            return result;
+        }
+
+        private void playRound(SimulationResult result) {
+            for (int idx = 1; idx < game.players().size(); idx++) {
+                chips[idx] = game.players().get(idx).getChips();
+            }
+
+            GameState state = game.action(Action.DEAL, bets);
+            for (int idx = 1; idx < game.players().size(); idx++) {
+                BlackjackPlayer player = game.players().get(idx);
+                blackjacks[idx] = player.getState() == PlayerState.BLACKJACK;
+                if (hands != null) {
+                    hands[idx].reset(idx).setCards(player.getHand().cardAt(0), player.getHand().cardAt(1));
+                }
+            }
+
+            Rank upCard = game.dealer().getHand().rankAt(0);
+            while (state == GameState.INPLAY) {
+                BlackjackPlayer player = game.currentPlayer();
+                if (player == game.dealer()) {
+                    throw new IllegalStateException("Round did not settle after the dealer's turn");
+                }
+                // Hitting a finished hand only passes the turn on to the next player
+                Action action = Action.HIT;
+                if (player.getState() == PlayerState.INPLAY) {
+                    action = policy.decide(player, upCard);
+                    if (hands != null) {
+                        hands[player.getSeat()].addAction(action);
+                    }
+                }
+                state = game.action(action);
+            }
+
+            for (int idx = 1; idx < game.players().size(); idx++) {
+                BlackjackPlayer player = game.players().get(idx);
+                result.record(player, player.getChips() - chips[idx], blackjacks[idx], upCard);
+            }
+            result.roundPlayed();
+        }
+
+        private void writeHands() {
+            try {
+                for (int idx = 1; idx < game.players().size(); idx++) {
+                    BlackjackPlayer player = game.players().get(idx);
+                    history.write(roundId, hands[idx].setState(player.getState()).setRule(player.getRule())
+                            .setChipsDelta(player.getChips() - chips[idx]));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not write the hands of round " + roundId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package cards.blackjack;
+
+import java.util.Arrays;
+
+import cards.blackjack.Blackjack.Action;
+import cards.common.Hand;
+import cards.common.Rank;
+
+/**
+ * {@link PlayerPolicy} looking the decisions up in dense tables indexed by the player's total and the value of the
+ * dealer's up card, so each decision takes constant time.
+ * <p>
+ * There are tables for hard totals, soft totals (an ace counted as 11) and pairs. The tables are compiled for the
+ * rules of a table by {@link #basic(TableRules)}, or filled in by the user through a {@link Builder} for any other
+ * strategy.
+ */
+public class StrategyTable implements PlayerPolicy {
+    /**
+     * Decisions held in the tables.
+     */
+    public enum Decision {
+        HIT, STAND, DOUBLE_OR_HIT, DOUBLE_OR_STAND
+    }
+
+    private static final Decision[] DECISIONS = Decision.values();
+
+    /**
+     * Highest total in the tables.
+     */
+    private static final int MAX_TOTAL = 21;
+
+    /**
+     * Number of dealer up card values, Ace (1) to 10.
+     */
+    private static final int UP_CARDS = 10;
+
+    /**
+     * Decision ordinals for the hard totals, indexed by total * UP_CARDS + up card value - 1.
+     */
+    private final byte[] hard;
+
+    /**
+     * Decision ordinals for the soft totals, indexed as the hard totals.
+     */
+    private final byte[] soft;
+
+    /**
+     * Whether to split a pair, indexed by card value * UP_CARDS + up card value - 1.
+     */
+    private final boolean[] split;
+
+    /**
+     * Values of the ranks at the table indexed by the rank ordinal.
+     */
+    private final int[] rankValues;
+
+    private StrategyTable(Builder builder) {
+        this.hard = builder.hard.clone();
+        this.soft = builder.soft.clone();
+        this.split = builder.split.clone();
+        this.rankValues = builder.rankValues;
+    }
+
+    /**
+     * Compiles the basic strategy for the rules of the table. The expected value of each decision is computed
+     * against the table's dealer rule and card values, for an infinite shoe. As the dealer does not check for a
+     * blackjack before the players play, a dealer blackjack takes doubled bets too.
+     *
+     * @param rules the rules of the table
+     * @return      the strategy
+     */
+    public static StrategyTable basic(TableRules rules) {
+        Builder builder = builder(rules);
+        Evaluator evaluator = new Evaluator(rules, builder.rankValues);
+        for (int up = 1; up <= UP_CARDS; up++) {
+            for (int total = 2; total <= MAX_TOTAL; total++) {
+                builder.hard(total, up, evaluator.decide(total, false, up));
+            }
+            for (int total = 12; total <= MAX_TOTAL; total++) {
+                builder.soft(total, up, evaluator.decide(total - 10, true, up));
+            }
+            for (int value = 1; value <= UP_CARDS; value++) {
+                builder.split(value, up, evaluator.splits(value, up));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a builder for a user supplied strategy. All the cells start as {@link Decision#STAND}.
+     *
+     * @param rules the rules of the table
+     * @return      the builder
+     */
+    public static Builder builder(TableRules rules) {
+        return new Builder(rules.getRankValue().toArray());
+    }
+
+    @Override
+    public Action decide(BlackjackPlayer player, Rank dealerUpCard) {
+        Hand hand = player.getHand();
+        int upIdx = rankValues[dealerUpCard.ordinal()] - 1;
+
+        if (player.canSplit()) {
+            int value = rankValues[hand.rankAt(0).ordinal()];
+            if (value == rankValues[hand.rankAt(1).ordinal()] && split[value * UP_CARDS + upIdx]) {
+                return Action.SPLIT;
+            }
+        }
+
+        int value = player.value();
+        int softValue = player.softValue();
+        byte decision = (softValue != value)
+                ? soft[softValue * UP_CARDS + upIdx]
+                : hard[Math.min(value, MAX_TOTAL) * UP_CARDS + upIdx];
+        switch (DECISIONS[decision]) {
+            case HIT:
+                return Action.HIT;
+            case DOUBLE_OR_HIT:
+                return player.canDoubleDown() ? Action.DOUBLEDOWN : Action.HIT;
+            case DOUBLE_OR_STAND:
+                return player.canDoubleDown() ? Action.DOUBLEDOWN : Action.STAND;
+            default:
+                return Action.STAND;
+        }
+    }
+
+    /* Lookups of the individual cells */
+
+    public Decision hard(int total, int upValue) {
+        return DECISIONS[hard[total * UP_CARDS + upValue - 1]];
+    }
+
+    public Decision soft(int total, int upValue) {
+        return DECISIONS[soft[total * UP_CARDS + upValue - 1]];
+    }
+
+    public boolean split(int value, int upValue) {
+        return split[value * UP_CARDS + upValue - 1];
+    }
+
+    /**
+     * Formats the tables as a chart with a row per total and a column per dealer up card.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        String separator = System.getProperty("line.separator");
+        buffer.append("     A  2  3  4  5  6  7  8  9  10").append(separator);
+        for (int total = 5; total <= MAX_TOTAL; total++) {
+            buffer.append(String.format("H%-3d", total));
+            for (int up = 1; up <= UP_CARDS; up++) {
+                buffer.append(String.format("%-3s", symbol(hard(total, up))));
+            }
+            buffer.append(separator);
+        }
+        for (int total = 13; total <= MAX_TOTAL; total++) {
+            buffer.append(String.format("S%-3d", total));
+            for (int up = 1; up <= UP_CARDS; up++) {
+                buffer.append(String.format("%-3s", symbol(soft(total, up))));
+            }
+            buffer.append(separator);
+        }
+        for (int value = 1; value <= UP_CARDS; value++) {
+            buffer.append(String.format("P%-3d", value));
+            for (int up = 1; up <= UP_CARDS; up++) {
+                buffer.append(String.format("%-3s", split(value, up) ? "P" : "-"));
+            }
+            buffer.append(separator);
+        }
+        return buffer.toString();
+    }
+
+    private static String symbol(Decision decision) {
+        switch (decision) {
+            case HIT:
+                return "H";
+            case DOUBLE_OR_HIT:
+                return "Dh";
+            case DOUBLE_OR_STAND:
+                return "Ds";
+            default:
+                return "S";
+        }
+    }
+
+    /**
+     * Builder filling in the cells of a {@link StrategyTable}.
+     */
+    public static class Builder {
+        private final byte[] hard = new byte[(MAX_TOTAL + 1) * UP_CARDS];
+
+        private final byte[] soft = new byte[(MAX_TOTAL + 1) * UP_CARDS];
+
+        private final boolean[] split = new boolean[(UP_CARDS + 1) * UP_CARDS];
+
+        private final int[] rankValues;
+
+        Builder(int[] rankValues) {
+            for (int value : rankValues) {
+                if (value < 1 || value > UP_CARDS) {
+                    throw new IllegalArgumentException("Card values should be between 1 and 10 : " + value);
+                }
+            }
+            this.rankValues = rankValues;
+            Arrays.fill(hard, (byte) Decision.STAND.ordinal());
+            Arrays.fill(soft, (byte) Decision.STAND.ordinal());
+        }
+
+        public Builder hard(int total, int upValue, Decision decision) {
+            hard[total * UP_CARDS + upValue - 1] = (byte) decision.ordinal();
+            return this;
+        }
+
+        public Builder soft(int total, int upValue, Decision decision) {
+            soft[total * UP_CARDS + upValue - 1] = (byte) decision.ordinal();
+            return this;
+        }
+
+        public Builder split(int value, int upValue, boolean split) {
+            this.split[value * UP_CARDS + upValue - 1] = split;
+            return this;
+        }
+
+        public StrategyTable build() {
+            return new StrategyTable(this);
+        }
+    }
+
+    /**
+     * Computes the expected values of the decisions for an infinite shoe, where the chance of each card value
+     * stays the same whatever has been dealt.
+     */
+    private static class Evaluator {
+        /**
+         * Index of the bust and blackjack outcomes in the dealer's distribution after the final values 0 - 21.
+         */
+        private static final int BUST = MAX_TOTAL + 1;
+
+        private static final int BLACKJACK = MAX_TOTAL + 2;
+
+        private final TableRules rules;
+
+        /**
+         * Chance of drawing each card value.
+         */
+        private final double[] chance = new double[UP_CARDS + 1];
+
+        /**
+         * Distribution of the dealer's final hand by up card value.
+         */
+        private final double[][] dealer = new double[UP_CARDS + 1][];
+
+        /**
+         * Expected value of hitting and playing on, by up card value, hard total and whether there is an ace.
+         * NaN till computed.
+         */
+        private final double[][][] hit = new double[UP_CARDS + 1][MAX_TOTAL + 1][2];
+
+        Evaluator(TableRules rules, int[] rankValues) {
+            this.rules = rules;
+            for (int value : rankValues) {
+                chance[value] += 1.0 / rankValues.length;
+            }
+            for (int up = 1; up <= UP_CARDS; up++) {
+                dealer[up] = dealer(up, up == 1, 1);
+                for (double[] values : hit[up]) {
+                    Arrays.fill(values, Double.NaN);
+                }
+            }
+        }
+
+        Decision decide(int value, boolean ace, int up) {
+            double stand = stand(best(value, ace), up);
+            double hit = hit(value, ace, up);
+            double doubleDown = doubleDown(value, ace, up);
+            if (doubleDown > Math.max(stand, hit)) {
+                return (hit >= stand) ? Decision.DOUBLE_OR_HIT : Decision.DOUBLE_OR_STAND;
+            }
+            return (hit > stand) ? Decision.HIT : Decision.STAND;
+        }
+
+        /**
+         * Whether splitting the pair beats playing it as a single hand. Each split hand gets a second card and is
+         * played on with hits, stands and, if the table allows, doubling down. Split aces stand on their second
+         * card. Splitting the hands again is not taken into account, which slightly understates the splits.
+         */
+        boolean splits(int value, int up) {
+            boolean ace = value == 1;
+            if (rules.getMaxSplitHands() < 2 || (ace && !rules.isSplitAces())) {
+                return false;
+            }
+            double splitHand = 0;
+            for (int card = 1; card <= UP_CARDS; card++) {
+                if (chance[card] > 0) {
+                    int total = value + card;
+                    boolean hasAce = ace || card == 1;
+                    double ev = stand(best(total, hasAce), up);
+                    if (!ace) {
+                        ev = Math.max(ev, hit(total, hasAce, up));
+                        if (rules.isDoubleAfterSplit()) {
+                            ev = Math.max(ev, doubleDown(total, hasAce, up));
+                        }
+                    }
+                    splitHand += chance[card] * ev;
+                }
+            }
+            double single = Math.max(Math.max(stand(best(2 * value, ace), up), hit(2 * value, ace, up)),
+                    doubleDown(2 * value, ace, up));
+            return 2 * splitHand > single;
+        }
+
+        private double stand(int total, int up) {
+            double[] outcome = dealer[up];
+            double ev = outcome[BUST] - outcome[BLACKJACK];
+            for (int dealerTotal = 0; dealerTotal <= MAX_TOTAL; dealerTotal++) {
+                ev += outcome[dealerTotal] * Integer.signum(total - dealerTotal);
+            }
+            return ev;
+        }
+
+        private double hit(int value, boolean ace, int up) {
+            int aceIdx = ace ? 1 : 0;
+            if (!Double.isNaN(hit[up][value][aceIdx])) {
+                return hit[up][value][aceIdx];
+            }
+            double ev = 0;
+            for (int card = 1; card <= UP_CARDS; card++) {
+                if (chance[card] == 0) {
+                    continue;
+                }
+                int total = value + card;
+                boolean hasAce = ace || card == 1;
+                if (total > MAX_TOTAL) {
+                    ev -= chance[card];
+                } else if (best(total, hasAce) == MAX_TOTAL) {
+                    // The player can not take another card on 21
+                    ev += chance[card] * stand(MAX_TOTAL, up);
+                } else {
+                    ev += chance[card] * Math.max(stand(best(total, hasAce), up), hit(total, hasAce, up));
+                }
+            }
+            hit[up][value][aceIdx] = ev;
+            return ev;
+        }
+
+        private double doubleDown(int value, boolean ace, int up) {
+            double ev = 0;
+            for (int card = 1; card <= UP_CARDS; card++) {
+                int total = value + card;
+                ev += chance[card] * ((total > MAX_TOTAL) ? -1 : stand(best(total, ace || card == 1), up));
+            }
+            return 2 * ev;
+        }
+
+        /**
+         * Distribution of the dealer's final hand starting from the given cards, following the table's dealer rule.
+         */
+        private double[] dealer(int value, boolean ace, int cards) {
+            double[] outcome = new double[BLACKJACK + 1];
+            int best = best(value, ace);
+            if (value > MAX_TOTAL) {
+                outcome[BUST] = 1;
+            } else if (cards == 2 && best == MAX_TOTAL) {
+                outcome[BLACKJACK] = 1;
+            } else if (cards >= 2 && !rules.dealerHits(value, best)) {
+                outcome[best] = 1;
+            } else {
+                for (int card = 1; card <= UP_CARDS; card++) {
+                    if (chance[card] > 0) {
+                        double[] next = dealer(value + card, ace || card == 1, cards + 1);
+                        for (int idx = 0; idx < outcome.length; idx++) {
+                            outcome[idx] += chance[card] * next[idx];
+                        }
+                    }
+                }
+            }
+            return outcome;
+        }
+
+        private static int best(int value, boolean ace) {
+            return (ace && value + 10 <= MAX_TOTAL) ? value + 10 : value;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package cards.blackjack;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.Rule;
+import cards.common.StripedCounters;
+
+/**
+ * Process wide metrics of the {@link Blackjack} tables: the count and latency histogram of each action, the cards
+ * dealt, the reshuffles and the rules settling the hands.
+ * <p>
+ * Collected only when the <code>metrics</code> system property is set. The switch is a static final flag, so when
+ * off the JIT removes the checks on the hot path and the metrics cost nothing. When on, the counts are added to
+ * {@link StripedCounters} so that the tables running on many threads do not contend. Reading the clock costs more
+ * than most actions, so each table only times one in <code>metricsSampleInterval</code> actions (16 by default) and
+ * the latencies of the timed actions go to histograms with power of two buckets. The metrics are published over JMX
+ * as <code>cards.blackjack:type=TableMetrics</code>.
+ * <p>
+ * Timed actions slower than the <code>slowActionNanos</code> system property (1 ms by default) are counted as slow.
+ */
+public final class TableMetrics implements TableMetricsMXBean {
+    /**
+     * Whether the metrics are collected.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("metrics");
+
+    /**
+     * Latency from which an action is counted as slow.
+     */
+    public static final long SLOW_ACTION_NANOS = Long.getLong("slowActionNanos", 1000000L);
+
+    /**
+     * Number of actions per action timed.
+     */
+    public static final int SAMPLE_INTERVAL = Math.max(1, Integer.getInteger("metricsSampleInterval", 16));
+
+    public static final String OBJECT_NAME = "cards.blackjack:type=TableMetrics";
+
+    private static final Action[] ACTIONS = Action.values();
+
+    private static final Rule[] RULES = Rule.values();
+
+    /**
+     * Latency buckets, bucket b holding the latencies from 2^b to 2^(b+1) - 1 nanos.
+     */
+    private static final int BUCKETS = 64;
+
+    /* Indexes of the counters */
+
+    private static final int TIMED_ACTIONS = ACTIONS.length;
+
+    private static final int ACTION_NANOS = 2 * ACTIONS.length;
+
+    private static final int HISTOGRAMS = 3 * ACTIONS.length;
+
+    private static final int RULE_COUNTS = HISTOGRAMS + ACTIONS.length * BUCKETS;
+
+    private static final int CARDS = RULE_COUNTS + RULES.length;
+
+    private static final int RESHUFFLES = CARDS + 1;
+
+    private static final int SLOW_ACTIONS = CARDS + 2;
+
+    private static final TableMetrics INSTANCE = new TableMetrics();
+
+    static {
+        if (ENABLED) {
+            INSTANCE.register();
+        }
+    }
+
+    private final StripedCounters counters = new StripedCounters(SLOW_ACTIONS + 1);
+
+    private final AtomicLongArray maxNanos = new AtomicLongArray(ACTIONS.length);
+
+    private TableMetrics() {
+    }
+
+    public static TableMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Published by another class loader
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not publish the table metrics", e);
+        }
+    }
+
+    /* Recording, called by the tables only if enabled */
+
+    /**
+     * Records an action.
+     *
+     * @param action the action
+     * @param nanos the time taken or -1 if the action was not timed
+     * @param cards the number of cards dealt during the action
+     */
+    void actionPerformed(Action action, long nanos, int cards) {
+        int idx = action.ordinal();
+        counters.increment(idx);
+        if (cards > 0) {
+            counters.add(CARDS, cards);
+        }
+        if (nanos < 0) {
+            return;
+        }
+        counters.increment(TIMED_ACTIONS + idx);
+        counters.add(ACTION_NANOS + idx, nanos);
+        counters.increment(HISTOGRAMS + idx * BUCKETS + bucket(nanos));
+        if (nanos >= SLOW_ACTION_NANOS) {
+            counters.increment(SLOW_ACTIONS);
+        }
+        long max;
+        while (nanos > (max = maxNanos.get(idx)) && !maxNanos.compareAndSet(idx, max, nanos)) {
+            // Retry till the max is at least as large
+        }
+    }
+
+    void reshuffled() {
+        counters.increment(RESHUFFLES);
+    }
+
+    void settled(Rule rule) {
+        counters.increment(RULE_COUNTS + rule.ordinal());
+    }
+
+    private static int bucket(long nanos) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+    }
+
+    /* Reading */
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public long getCount(Action action) {
+        return counters.sum(action.ordinal());
+    }
+
+    public long getCount(Rule rule) {
+        return counters.sum(RULE_COUNTS + rule.ordinal());
+    }
+
+    /**
+     * Estimates a percentile of the latency of the action from the histogram of the timed actions.
+     *
+     * @param action the action
+     * @param percentile the percentile, between 0 and 100
+     * @return      the upper bound of the bucket holding the percentile, 0 if the action was not performed
+     */
+    public long getLatencyPercentile(Action action, double percentile) {
+        long[] histogram = new long[BUCKETS];
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            histogram[bucket] = counters.sum(HISTOGRAMS + action.ordinal() * BUCKETS + bucket);
+            total += histogram[bucket];
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS && total > 0; bucket++) {
+            seen += histogram[bucket];
+            if (seen >= rank && histogram[bucket] > 0) {
+                return (bucket == BUCKETS - 1) ? Long.MAX_VALUE : (2L << bucket) - 1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public Map<String, Long> getActionCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Action action : ACTIONS) {
+            counts.put(action.name(), getCount(action));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getMeanLatencyNanos() {
+        Map<String, Long> means = new LinkedHashMap<String, Long>();
+        for (Action action : ACTIONS) {
+            long count = counters.sum(TIMED_ACTIONS + action.ordinal());
+            means.put(action.name(), (count == 0) ? 0 : counters.sum(ACTION_NANOS + action.ordinal()) / count);
+        }
+        return means;
+    }
+
+    @Override
+    public Map<String, Long> getMedianLatencyNanos() {
+        return percentiles(50);
+    }
+
+    @Override
+    public Map<String, Long> get99thPercentileLatencyNanos() {
+        return percentiles(99);
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        Map<String, Long> percentiles = new LinkedHashMap<String, Long>();
+        for (Action action : ACTIONS) {
+            percentiles.put(action.name(), getLatencyPercentile(action, percentile));
+        }
+        return percentiles;
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyNanos() {
+        Map<String, Long> max = new LinkedHashMap<String, Long>();
+        for (Action action : ACTIONS) {
+            max.put(action.name(), maxNanos.get(action.ordinal()));
+        }
+        return max;
+    }
+
+    @Override
+    public long getSlowActions() {
+        return counters.sum(SLOW_ACTIONS);
+    }
+
+    @Override
+    public long getCardsDealt() {
+        return counters.sum(CARDS);
+    }
+
+    @Override
+    public long getReshuffles() {
+        return counters.sum(RESHUFFLES);
+    }
+
+    @Override
+    public Map<String, Long> getRuleCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Rule rule : RULES) {
+            counts.put(rule.name(), getCount(rule));
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        counters.reset();
+        for (int idx = 0; idx < ACTIONS.length; idx++) {
+            maxNanos.set(idx, 0);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package cards.blackjack;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link TableMetrics}, published over JMX.
+ */
+public interface TableMetricsMXBean {
+    /**
+     * Whether the metrics are collected, see the <code>metrics</code> system property.
+     *
+     * @return      true if enabled
+     */
+    boolean isEnabled();
+
+    Map<String, Long> getActionCounts();
+
+    Map<String, Long> getMeanLatencyNanos();
+
+    Map<String, Long> getMedianLatencyNanos();
+
+    Map<String, Long> get99thPercentileLatencyNanos();
+
+    Map<String, Long> getMaxLatencyNanos();
+
+    /**
+     * Number of timed actions slower than the <code>slowActionNanos</code> system property.
+     *
+     * @return      the number of slow actions
+     */
+    long getSlowActions();
+
+    long getCardsDealt();
+
+    long getReshuffles();
+
+    Map<String, Long> getRuleCounts();
+
+    /**
+     * Starts the counts and latencies over.
+     */
+    void reset();
+}
@@ -0,0 +1,323 @@
+package cards.blackjack;
+
+import cards.common.Rank;
+import cards.common.RankValue;
+import cards.common.Shoe;
+
+/**
+ * Immutable rules of a {@link Blackjack} table.
+ * <p>
+ * Every table holds its own rules, so tables with different rules can be played side by side in the same JVM.
+ * Instances are created with a {@link Builder}; {@link #fromSystemProperties()} reads the rules from the
+ * <code>hardStand</code> and <code>blackjackWinFactor</code> system properties.
+ * <p>
+ * The dealer draws by a {@link DealerStand}. The default is the rule of the original game, hitting every 17, and
+ * the usual casino rules {@link DealerStand#S17} and {@link DealerStand#H17} are available.
+ * <p>
+ * Pairs can be split into up to {@link Builder#maxSplitHands(int)} hands. Split aces take a single card each and
+ * can not be split again.
+ */
+public final class TableRules {
+    /**
+     * Blackjack specific values for the ranks. Face cards count as 10.
+     */
+    public static final RankValue BLACKJACK_RANK_VALUE = new RankValue() {
+        @Override
+        public int getValue(Rank rank) {
+            /* Override values for Jack, Queen and King */
+            switch(rank) {
+                case JACK:
+                case QUEEN:
+                case KING:
+                    return 10;
+                default :
+                    return super.getValue(rank);
+            }
+        }
+    };
+
+    /**
+     * Rules for the dealer to take another card.
+     */
+    public enum DealerStand {
+        /**
+         * Hits while the best value, with an ace counted as 11 if it does not bust, is 17 or less, i.e. hits every
+         * 17. The rule of the original game and the default.
+         */
+        SOFT {
+            @Override
+            public boolean hits(int value, int softValue) {
+                return softValue <= 17;
+            }
+        },
+        /**
+         * Hits while the hard value, with the aces counted as 1, is below 17. Set by the <code>hardStand</code>
+         * system property.
+         */
+        HARD {
+            @Override
+            public boolean hits(int value, int softValue) {
+                return value < 17;
+            }
+        },
+        /**
+         * Stands on all 17s.
+         */
+        S17 {
+            @Override
+            public boolean hits(int value, int softValue) {
+                return softValue < 17;
+            }
+        },
+        /**
+         * Hits a soft 17 and stands on a hard 17.
+         */
+        H17 {
+            @Override
+            public boolean hits(int value, int softValue) {
+                return softValue < 17 || (softValue == 17 && value != softValue);
+            }
+        };
+
+        /**
+         * Whether the dealer has to take another card.
+         *
+         * @param value the hard value of the dealer's hand
+         * @param softValue the soft value of the dealer's hand
+         * @return      true if the dealer hits
+         */
+        public abstract boolean hits(int value, int softValue);
+    }
+
+    /**
+     * Number of decks in the shoe.
+     */
+    private final int numDecks;
+
+    /**
+     * Fraction of the shoe dealt before it is reshuffled.
+     */
+    private final double penetration;
+
+    /**
+     * Rule for the dealer to take another card.
+     */
+    private final DealerStand dealerStand;
+
+    /**
+     * Specifies blackjack win factor
+     */
+    private final double blackjackWinFactor;
+
+    /**
+     * Values of the cards.
+     */
+    private final RankValue rankValue;
+
+    /**
+     * Most hands a player can hold by splitting pairs, 1 if splitting is not allowed.
+     */
+    private final int maxSplitHands;
+
+    /**
+     * Whether a pair of aces can be split.
+     */
+    private final boolean splitAces;
+
+    /**
+     * Whether a hand split from a pair can be doubled down.
+     */
+    private final boolean doubleAfterSplit;
+
+    private TableRules(Builder builder) {
+        this.numDecks = builder.numDecks;
+        this.penetration = builder.penetration;
+        this.dealerStand = builder.dealerStand;
+        this.blackjackWinFactor = builder.blackjackWinFactor;
+        this.rankValue = builder.rankValue;
+        this.maxSplitHands = builder.maxSplitHands;
+        this.splitAces = builder.splitAces;
+        this.doubleAfterSplit = builder.doubleAfterSplit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates the rules configured by the system properties, see the README.
+     *
+     * @return      the builder with the rules set
+     */
+    public static Builder fromSystemProperties() {
+        Builder builder = builder().hardStand(Boolean.getBoolean("hardStand"));
+        try {
+            builder.blackjackWinFactor(Double.parseDouble(System.getProperty("blackjackWinFactor")));
+        } catch (final Exception e) {
+            // Ignore and use default
+        }
+        return builder;
+    }
+
+    /**
+     * Creates a builder initialized with these rules, e.g. to derive the rules for a parameter sweep.
+     *
+     * @return      the builder
+     */
+    public Builder toBuilder() {
+        return builder().decks(numDecks).penetration(penetration).dealerStand(dealerStand)
+                .blackjackWinFactor(blackjackWinFactor).rankValue(rankValue).maxSplitHands(maxSplitHands)
+                .splitAces(splitAces).doubleAfterSplit(doubleAfterSplit);
+    }
+
+    /**
+     * Whether the dealer has to take another card, see {@link DealerStand}.
+     *
+     * @param value the hard value of the dealer's hand
+     * @param softValue the soft value of the dealer's hand
+     * @return      true if the dealer hits
+     */
+    public boolean dealerHits(int value, int softValue) {
+        return dealerStand.hits(value, softValue);
+    }
+
+    /* Getters */
+
+    public int getNumDecks() {
+        return numDecks;
+    }
+
+    public double getPenetration() {
+        return penetration;
+    }
+
+    public DealerStand getDealerStand() {
+        return dealerStand;
+    }
+
+    public boolean isHardStand() {
+        return dealerStand == DealerStand.HARD;
+    }
+
+    public double getBlackjackWinFactor() {
+        return blackjackWinFactor;
+    }
+
+    public RankValue getRankValue() {
+        return rankValue;
+    }
+
+    public int getMaxSplitHands() {
+        return maxSplitHands;
+    }
+
+    public boolean isSplitAces() {
+        return splitAces;
+    }
+
+    public boolean isDoubleAfterSplit() {
+        return doubleAfterSplit;
+    }
+
+    @Override
+    public String toString() {
+        return "Decks : " + numDecks + ", Penetration : " + penetration + ", Dealer Stand : " + dealerStand
+                + ", Blackjack Win Factor : " + blackjackWinFactor + ", Max Split Hands : " + maxSplitHands
+                + ", Split Aces : " + splitAces + ", Double After Split : " + doubleAfterSplit;
+    }
+
+    /**
+     * Builder for the {@link TableRules}. Defaults to a single deck, soft stand, a 1.5 blackjack win factor and
+     * splitting up to 4 hands, aces included, with doubling down after a split.
+     */
+    public static class Builder {
+        private int numDecks = 1;
+
+        private double penetration = Shoe.DEFAULT_PENETRATION;
+
+        private DealerStand dealerStand = DealerStand.SOFT;
+
+        private double blackjackWinFactor = 1.5;
+
+        private RankValue rankValue = BLACKJACK_RANK_VALUE;
+
+        private int maxSplitHands = 4;
+
+        private boolean splitAces = true;
+
+        private boolean doubleAfterSplit = true;
+
+        public Builder decks(int numDecks) {
+            this.numDecks = numDecks;
+            return this;
+        }
+
+        public Builder penetration(double penetration) {
+            this.penetration = penetration;
+            return this;
+        }
+
+        /**
+         * Sets the dealer to stand {@link DealerStand#HARD hard} or {@link DealerStand#SOFT soft}.
+         *
+         * @param hardStand whether the dealer stands hard
+         * @return      this builder
+         */
+        public Builder hardStand(boolean hardStand) {
+            this.dealerStand = hardStand ? DealerStand.HARD : DealerStand.SOFT;
+            return this;
+        }
+
+        public Builder dealerStand(DealerStand dealerStand) {
+            this.dealerStand = dealerStand;
+            return this;
+        }
+
+        public Builder blackjackWinFactor(double blackjackWinFactor) {
+            this.blackjackWinFactor = blackjackWinFactor;
+            return this;
+        }
+
+        public Builder rankValue(RankValue rankValue) {
+            this.rankValue = rankValue;
+            return this;
+        }
+
+        /**
+         * Sets the most hands a player can hold by splitting, i.e. one more than the number of splits.
+         *
+         * @param maxSplitHands the number of hands, 1 to not allow splitting
+         * @return      this builder
+         */
+        public Builder maxSplitHands(int maxSplitHands) {
+            this.maxSplitHands = maxSplitHands;
+            return this;
+        }
+
+        public Builder splitAces(boolean splitAces) {
+            this.splitAces = splitAces;
+            return this;
+        }
+
+        public Builder doubleAfterSplit(boolean doubleAfterSplit) {
+            this.doubleAfterSplit = doubleAfterSplit;
+            return this;
+        }
+
+        public TableRules build() {
+            if (numDecks < 1) {
+                throw new IllegalArgumentException("At least a single deck is needed : " + numDecks);
+            }
+            if (penetration <= 0 || penetration > 1) {
+                throw new IllegalArgumentException("Penetration should be in (0, 1] : " + penetration);
+            }
+            if (dealerStand == null) {
+                throw new IllegalArgumentException("The dealer stand is needed");
+            }
+            if (maxSplitHands < 1 || maxSplitHands > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid number of split hands : " + maxSplitHands);
+            }
+            return new TableRules(this);
+        }
+    }
+}
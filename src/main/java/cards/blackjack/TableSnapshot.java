@@ -0,0 +1,166 @@
+package cards.blackjack;
+
+import java.util.Arrays;
+
+import cards.common.Deck;
+import cards.common.Hand;
+
+/**
+ * Saved state of a {@link Blackjack} table, to try out actions and go back, e.g. when searching ahead.
+ * <p>
+ * The state is held flat in primitive arrays which grow to the largest table saved, so a snapshot is meant to be
+ * reused: saving to it again allocates nothing. The cards of the shoe are not copied but shared with the table till
+ * it reshuffles, see {@link Deck.Snapshot}.
+ * <p>
+ * A snapshot is only valid for the table it was saved from, or another with the same number of players and rules.
+ * The source of randomness of the table is not saved, so the shoe deals the same cards after a restore but is
+ * shuffled differently from then on.
+ */
+public final class TableSnapshot {
+    /**
+     * Flag of a card dealt face down, set on top of its code.
+     */
+    private static final int FACE_DOWN = 0x40;
+
+    private static final int CODE_MASK = FACE_DOWN - 1;
+
+    final Deck.Snapshot shoe = new Deck.Snapshot();
+
+    private int[] ints = new int[32];
+
+    private int numInts;
+
+    private double[] doubles = new double[8];
+
+    private int numDoubles;
+
+    private byte[] cards = new byte[32];
+
+    private int numCards;
+
+    /* Positions read from when restoring */
+
+    private int intPosition;
+
+    private int doublePosition;
+
+    private int cardPosition;
+
+    /**
+     * Whether the other snapshot saved the same state: the same hands, bets, chips and shoe.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof TableSnapshot)) {
+            return false;
+        }
+        TableSnapshot other = (TableSnapshot) obj;
+        return numInts == other.numInts && numDoubles == other.numDoubles && numCards == other.numCards
+                && equals(ints, other.ints, numInts) && equals(doubles, other.doubles, numDoubles)
+                && equals(cards, other.cards, numCards) && shoe.equals(other.shoe);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * shoe.hashCode() + numInts;
+    }
+
+    private static boolean equals(int[] first, int[] second, int length) {
+        for (int idx = 0; idx < length; idx++) {
+            if (first[idx] != second[idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(double[] first, double[] second, int length) {
+        for (int idx = 0; idx < length; idx++) {
+            if (Double.doubleToLongBits(first[idx]) != Double.doubleToLongBits(second[idx])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(byte[] first, byte[] second, int length) {
+        for (int idx = 0; idx < length; idx++) {
+            if (first[idx] != second[idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts saving a table over.
+     */
+    void clear() {
+        numInts = 0;
+        numDoubles = 0;
+        numCards = 0;
+    }
+
+    /**
+     * Starts reading the table saved from the beginning.
+     */
+    void rewind() {
+        intPosition = 0;
+        doublePosition = 0;
+        cardPosition = 0;
+    }
+
+    void putInt(int value) {
+        if (numInts == ints.length) {
+            ints = Arrays.copyOf(ints, numInts * 2);
+        }
+        ints[numInts++] = value;
+    }
+
+    int getInt() {
+        return ints[intPosition++];
+    }
+
+    void putDouble(double value) {
+        if (numDoubles == doubles.length) {
+            doubles = Arrays.copyOf(doubles, numDoubles * 2);
+        }
+        doubles[numDoubles++] = value;
+    }
+
+    double getDouble() {
+        return doubles[doublePosition++];
+    }
+
+    /**
+     * Saves the cards of the hand and whether each is face up.
+     *
+     * @param hand the hand
+     */
+    void putHand(Hand hand) {
+        putInt(hand.size());
+        if (numCards + hand.size() > cards.length) {
+            cards = Arrays.copyOf(cards, Math.max(numCards + hand.size(), cards.length * 2));
+        }
+        for (int idx = 0; idx < hand.size(); idx++) {
+            cards[numCards++] = (byte) (hand.cardAt(idx) | (hand.isFaceUp(idx) ? 0 : FACE_DOWN));
+        }
+    }
+
+    /**
+     * Restores the hand saved next.
+     *
+     * @param hand the hand to overwrite
+     */
+    void getHand(Hand hand) {
+        int size = getInt();
+        hand.clear();
+        for (int idx = 0; idx < size; idx++) {
+            int card = cards[cardPosition++];
+            hand.addCard(card & CODE_MASK);
+            if ((card & FACE_DOWN) != 0) {
+                hand.setFaceUp(idx, false);
+            }
+        }
+    }
+}
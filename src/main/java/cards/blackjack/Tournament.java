@@ -0,0 +1,363 @@
+package cards.blackjack;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+import cards.common.Rank;
+import cards.common.SplitMixRandom;
+
+/**
+ * Tournament of bots, each entrant playing with its own {@link PlayerPolicy}.
+ * <p>
+ * The tournament is played in stages. At each stage the entrants left are seated at tables of up to
+ * {@link #setSeatsPerTable(int) seats per table}, and every table plays a fixed number of rounds or till all its
+ * entrants are out of chips to bet. The entrants with the most chips advance to the next stage, keeping their chips,
+ * till the entrants left fit a single final table.
+ * <p>
+ * The tables of a stage are split over a fork-join pool, so the threads done with their tables steal the tables of
+ * the others and tables ending early do not leave threads idle. The chips of the entrants are published to the
+ * {@link Leaderboard} after each round without any lock.
+ * <p>
+ * Each table shuffles with its own {@link SplitMixRandom} derived from the tournament seed, the stage and the table,
+ * and the entrants are seated from the seed too, so a tournament with the same seed is replayed exactly whatever
+ * the parallelism.
+ */
+public class Tournament {
+    /**
+     * Tables played by a single task before the work is not split any further.
+     */
+    private static final int TABLES_PER_TASK = 4;
+
+    private final TableRules rules;
+
+    private final PlayerPolicy[] entrants;
+
+    private int seatsPerTable = 7;
+
+    private int roundsPerStage = 100;
+
+    private int chips = 100;
+
+    private int bet = 1;
+
+    private double advancing = 0.5;
+
+    private long seed = ThreadLocalRandom.current().nextLong();
+
+    private volatile Leaderboard leaderboard;
+
+    /**
+     * @param rules the rules of the tables
+     * @param entrants the policy of each entrant, the index of the policy being the entrant's
+     */
+    public Tournament(TableRules rules, List<? extends PlayerPolicy> entrants) {
+        if (entrants.size() < 2) {
+            throw new IllegalArgumentException("A tournament needs at least 2 entrants : " + entrants.size());
+        }
+        this.rules = rules;
+        this.entrants = entrants.toArray(new PlayerPolicy[entrants.size()]);
+        this.leaderboard = new Leaderboard(entrants.size());
+    }
+
+    public Tournament setSeatsPerTable(int seatsPerTable) {
+        if (seatsPerTable < 2) {
+            throw new IllegalArgumentException("A table needs at least 2 seats : " + seatsPerTable);
+        }
+        this.seatsPerTable = seatsPerTable;
+        return this;
+    }
+
+    public Tournament setRoundsPerStage(int roundsPerStage) {
+        if (roundsPerStage < 1) {
+            throw new IllegalArgumentException("At least a round should be played per stage : " + roundsPerStage);
+        }
+        this.roundsPerStage = roundsPerStage;
+        return this;
+    }
+
+    /**
+     * Sets the chips each entrant starts with.
+     *
+     * @param chips the chips
+     * @return      this tournament
+     */
+    public Tournament setChips(int chips) {
+        this.chips = chips;
+        return this;
+    }
+
+    /**
+     * Sets the bet of every round. An entrant with fewer chips leaves the table, and the entrants left are dealt on
+     * from a new shoe, so an entrant out of chips draws no more cards. Doubling down and splitting are not limited by
+     * the chips left, so an entrant can end up owing chips.
+     *
+     * @param bet the bet
+     * @return      this tournament
+     */
+    public Tournament setBet(int bet) {
+        if (bet < 1) {
+            throw new IllegalArgumentException("The bet should be at least a chip : " + bet);
+        }
+        this.bet = bet;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the entrants advancing from a stage to the next.
+     *
+     * @param advancing the fraction, in (0, 1)
+     * @return      this tournament
+     */
+    public Tournament setAdvancing(double advancing) {
+        if (advancing <= 0 || advancing >= 1) {
+            throw new IllegalArgumentException("The fraction advancing should be in (0, 1) : " + advancing);
+        }
+        this.advancing = advancing;
+        return this;
+    }
+
+    /**
+     * Sets the seed the seating and the shuffles of the tournament are derived from. Random by default.
+     *
+     * @param seed the seed
+     * @return      this tournament
+     */
+    public Tournament setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * The standings of the tournament, which can be read while it runs.
+     *
+     * @return      the leaderboard
+     */
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * Plays the tournament to the end of the final table, with the tables spread over the given number of threads.
+     *
+     * @param parallelism the number of threads to use
+     * @return      the final standings
+     */
+    public Leaderboard run(int parallelism) {
+        leaderboard = new Leaderboard(entrants.length);
+        int[] left = new int[entrants.length];
+        for (int entrant = 0; entrant < left.length; entrant++) {
+            left[entrant] = entrant;
+            leaderboard.publish(entrant, chips);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int stage = 0;; stage++) {
+                leaderboard.startStage(stage, left);
+                int[] seating = seat(stage, left);
+                int tables = (seating.length + seatsPerTable - 1) / seatsPerTable;
+                pool.invoke(new StageTask(stage, seating, tables, 0, tables));
+                if (left.length <= seatsPerTable) {
+                    return leaderboard;
+                }
+                left = advance(left);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Seats the entrants in a random order derived from the seed and the stage.
+     */
+    private int[] seat(int stage, int[] left) {
+        int[] seating = left.clone();
+        // Derived apart from the seeds of the tables, which are indexed by the stage too
+        SplitMixRandom random = new SplitMixRandom(SplitMixRandom.seedFor(~seed, stage));
+        for (int idx = seating.length - 1; idx > 0; idx--) {
+            int swapIdx = random.nextInt(idx + 1);
+            int entrant = seating[idx];
+            seating[idx] = seating[swapIdx];
+            seating[swapIdx] = entrant;
+        }
+        return seating;
+    }
+
+    /**
+     * The entrants with the most chips, ties going to the lower entrant. At least a full table advances and at
+     * least an entrant drops out, so the stages come to an end.
+     */
+    private int[] advance(int[] left) {
+        Integer[] ranked = new Integer[left.length];
+        for (int idx = 0; idx < left.length; idx++) {
+            ranked[idx] = left[idx];
+        }
+        Arrays.sort(ranked, new ChipsOrder());
+        int count = Math.min(left.length - 1, Math.max(seatsPerTable, (int) Math.ceil(left.length * advancing)));
+        int[] advanced = new int[count];
+        for (int idx = 0; idx < count; idx++) {
+            advanced[idx] = ranked[idx];
+        }
+        Arrays.sort(advanced);
+        return advanced;
+    }
+
+    /**
+     * Orders the entrants by their chips, the most first. Only used between the stages, with no table publishing.
+     */
+    private class ChipsOrder implements Comparator<Integer> {
+        @Override
+        public int compare(Integer left, Integer right) {
+            int compare = Double.compare(leaderboard.getChips(right), leaderboard.getChips(left));
+            return (compare != 0) ? compare : left.compareTo(right);
+        }
+    }
+
+    /**
+     * Splits the tables of a stage in halves till few enough to be played by a single task.
+     */
+    private class StageTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int stage;
+
+        /**
+         * Entrants in the order they are seated.
+         */
+        private final int[] seating;
+
+        private final int tables;
+
+        private final int from;
+
+        private final int to;
+
+        StageTask(int stage, int[] seating, int tables, int from, int to) {
+            this.stage = stage;
+            this.seating = seating;
+            this.tables = tables;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TABLES_PER_TASK) {
+                for (int table = from; table < to; table++) {
+                    // The entrants are spread evenly, so the tables differ by a seat at most
+                    new TableEngine(stage, table, seating, (int) ((long) table * seating.length / tables),
+                            (int) ((long) (table + 1) * seating.length / tables)).play();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new StageTask(stage, seating, tables, from, middle),
+                    new StageTask(stage, seating, tables, middle, to));
+        }
+    }
+
+    /**
+     * A single table of a stage. Confined to one thread.
+     * <p>
+     * Only the entrants with the chips to bet are seated. When an entrant runs out of chips, the others are seated
+     * at a new table with a new shoe derived from the seed of the table and the number of times it was reseated.
+     */
+    private class TableEngine {
+        /**
+         * Entrants of the table, whether seated or out of chips.
+         */
+        private final int[] members;
+
+        private final long tableSeed;
+
+        private int reseats;
+
+        private Blackjack game;
+
+        /**
+         * Entrant at each seat, the dealer's seat unused.
+         */
+        private int[] seated;
+
+        private int[] bets;
+
+        TableEngine(int stage, int table, int[] seating, int from, int to) {
+            members = Arrays.copyOfRange(seating, from, to);
+            tableSeed = SplitMixRandom.seedFor(seed, ((long) stage << 32) | table);
+        }
+
+        void play() {
+            int round = 0;
+            while (round < roundsPerStage && seatBettors()) {
+                playRound();
+                round++;
+                for (int seat = 1; seat < seated.length; seat++) {
+                    leaderboard.publish(seated[seat], game.players().get(seat).getChips());
+                }
+            }
+            leaderboard.roundsPlayed(round);
+        }
+
+        /**
+         * Seats the entrants with enough chips to bet at a new table, unless they are all seated already.
+         *
+         * @return      false if no entrant can bet
+         */
+        private boolean seatBettors() {
+            int count = 0;
+            for (int entrant : members) {
+                if (leaderboard.getChips(entrant) >= bet) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return false;
+            }
+            if (game != null && count == seated.length - 1) {
+                return true;
+            }
+            game = new Blackjack(count, 0, rules,
+                    new SplitMixRandom((reseats == 0) ? tableSeed : SplitMixRandom.seedFor(tableSeed, reseats)));
+            reseats++;
+            seated = new int[count + 1];
+            bets = new int[count];
+            Arrays.fill(bets, bet);
+            int seat = 1;
+            for (int entrant : members) {
+                if (leaderboard.getChips(entrant) >= bet) {
+                    seated[seat] = entrant;
+                    game.players().get(seat++).setChips(leaderboard.getChips(entrant));
+                }
+            }
+            return true;
+        }
+
+        private void playRound() {
+            GameState state = game.action(Action.DEAL, bets);
+            Rank upCard = game.dealer().getHand().rankAt(0);
+            while (state == GameState.INPLAY) {
+                BlackjackPlayer player = game.currentPlayer();
+                if (player == game.dealer()) {
+                    throw new IllegalStateException("Round did not settle after the dealer's turn");
+                }
+                // Hitting a finished hand only passes the turn on to the next player
+                Action action = Action.HIT;
+                if (player.getState() == PlayerState.INPLAY) {
+                    action = entrants[seated[player.getSeat()]].decide(player, upCard);
+                }
+                state = game.action(action);
+            }
+        }
+    }
+}
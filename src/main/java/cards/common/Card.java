@@ -1,51 +1,81 @@
 package cards.common;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Representation of a playing card. 
+ * <p>
+ * Cards are immutable and there is a single instance of each of the 52 cards, shared by all the decks and hands and
+ * obtained with {@link #of(Rank, Suit)}. Whether a card is dealt face down is kept by the {@link Hand} holding it.
  */
-public class Card {
-    private Rank rank;
+public final class Card {
+    /**
+     * The cards indexed by their {@link Cards} code.
+     */
+    private static final Card[] CARDS = new Card[Cards.DECK_SIZE];
 
-    private Suit suit;
-    
-    private boolean visible = true;
+    private static final List<String> BACK = rows("- * -", "- * -");
+
+    static {
+        for (Rank rank : Rank.values()) {
+            for (Suit suit : Suit.values()) {
+                CARDS[Cards.encode(rank, suit)] = new Card(rank, suit);
+            }
+        }
+    }
+
+    private final Rank rank;
+
+    private final Suit suit;
+
+    /**
+     * Rows printed for the card dealt face up.
+     */
+    private final List<String> face;
     
-    public Card(Rank rank, Suit suit) {
+    private Card(Rank rank, Suit suit) {
         this.rank = rank;
         this.suit = suit;
+        this.face = rows("| " + rank + " |", "| " + suit + " |");
     }
 
-    public Rank getRank() {
-        return rank;
+    /**
+     * The card of the given rank and suit.
+     *
+     * @param rank the rank
+     * @param suit the suit
+     * @return      the shared card instance
+     */
+    public static Card of(Rank rank, Suit suit) {
+        return CARDS[Cards.encode(rank, suit)];
     }
 
-    public void setRank(Rank rank) {
-        this.rank = rank;
+    /**
+     * The card of the given code.
+     *
+     * @param code the card code
+     * @return      the shared card instance
+     */
+    public static Card of(int code) {
+        return CARDS[code];
     }
 
-    public int getValue() {
-        return rank.getValue();
+    private static List<String> rows(String rank, String suit) {
+        return Collections.unmodifiableList(Arrays.asList("-----", rank, suit, "-----"));
     }
 
-    public Suit getSuit() {
-        return suit;
+    public Rank getRank() {
+        return rank;
     }
 
-    public Card setSuit(Suit suit) {
-        this.suit = suit;
-        return this;
-    }
-    
-    public boolean isVisible() {
-        return visible;
+    public int getValue() {
+        return rank.getValue();
     }
 
-    public Card setVisible(boolean visible) {
-        this.visible = visible;
-        return this;
+    public Suit getSuit() {
+        return suit;
     }
     
     @Override
@@ -59,6 +89,11 @@ public class Card {
         }
         return false;
     }
+
+    @Override
+    public int hashCode() {
+        return Cards.encode(rank, suit);
+    }
     
     @Override
     public String toString() {
@@ -76,35 +111,38 @@ public class Card {
         return visitor.visit(this);
     }
     
+    /**
+     * Rows printing the card face up.
+     *
+     * @return      the rows, shared and unmodifiable
+     */
     public List<String> prettyPrint() {
-        List<String> rows = new ArrayList<String>();
-        rows.add("-----");
-        if (isVisible()) {
-            rows.add("| " + getRank() + " |");
-            rows.add("| " + getSuit() + " |");
-        } else {
-            rows.add("- * -");
-            rows.add("- * -");            
-        }
-        rows.add("-----");
+        return face;
+    }
 
-        return rows;
+    /**
+     * Rows printing the card face up or the back of the card if face down.
+     *
+     * @param faceUp whether the card is dealt face up
+     * @return      the rows, shared and unmodifiable
+     */
+    public List<String> prettyPrint(boolean faceUp) {
+        return faceUp ? face : BACK;
     }
     
     public static void main(String argv[]) {
-        Card one = new Card(Rank.ACE, Suit.DIAMOND);
+        Card one = Card.of(Rank.ACE, Suit.DIAMOND);
         
-        Card two = new Card(Rank.TWO, Suit.CLUB);
+        Card two = Card.of(Rank.TWO, Suit.CLUB);
         
-        Card three = new Card(Rank.THREE, Suit.HEART);
+        Card three = Card.of(Rank.THREE, Suit.HEART);
         
-        Card four = new Card(Rank.FOUR, Suit.SPADE);
-        four.setVisible(false);
+        Card four = Card.of(Rank.FOUR, Suit.SPADE);
         
         for (int i = 0; i < 4; i++) {
             System.out.printf("%-7.5s %-7.5s %-7.5s %-7.5s%n", 
                             one.prettyPrint().get(i), two.prettyPrint().get(i),
-                            three.prettyPrint().get(i), four.prettyPrint().get(i));
+                            three.prettyPrint().get(i), four.prettyPrint(false).get(i));
         }
     }
 }
@@ -0,0 +1,65 @@
+package cards.common;
+
+/**
+ * Compact primitive encoding of the playing cards.
+ * <p>
+ * A card is encoded as an int (fitting in a byte) with the {@link Rank} ordinal in the upper bits and the
+ * {@link Suit} ordinal in the lowest 2 bits. This lets decks and hands be held in primitive arrays while the shared
+ * {@link Card} instances are only looked up for presentation.
+ */
+public final class Cards {
+    /**
+     * Number of cards in a single deck.
+     */
+    public static final int DECK_SIZE = Rank.values().length * Suit.values().length;
+
+    private static final Rank[] RANKS = Rank.values();
+
+    private static final Suit[] SUITS = Suit.values();
+
+    private Cards() {
+    }
+
+    /**
+     * Encodes the rank and suit of a card.
+     *
+     * @param rank the rank
+     * @param suit the suit
+     * @return      the card code
+     */
+    public static int encode(Rank rank, Suit suit) {
+        return (rank.ordinal() << 2) | suit.ordinal();
+    }
+
+    /**
+     * Encodes the given card.
+     *
+     * @param card the card
+     * @return      the card code
+     */
+    public static int encode(Card card) {
+        return encode(card.getRank(), card.getSuit());
+    }
+
+    public static int rankOrdinal(int code) {
+        return code >>> 2;
+    }
+
+    public static Rank rank(int code) {
+        return RANKS[code >>> 2];
+    }
+
+    public static Suit suit(int code) {
+        return SUITS[code & 3];
+    }
+
+    /**
+     * The card object for the code, see {@link Card#of(int)}.
+     *
+     * @param code the card code
+     * @return      the card
+     */
+    public static Card toCard(int code) {
+        return Card.of(code);
+    }
+}
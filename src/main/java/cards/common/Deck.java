@@ -1,57 +1,312 @@
 package cards.common;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Representation of the deck of playing cards.
- * 
+ * <p>
+ * The cards are held as {@link Cards} codes in a primitive array so that no card objects are created while
+ * dealing. The number of cards left of each rank and any {@link RunningCount} attached are kept up to date as the
+ * cards are dealt, so the composition can be read without scanning the cards.
+ * <p>
+ * The state of the deck can be saved to a {@link Snapshot} and restored later. The cards are shared with the
+ * snapshots and only copied when the deck shuffles them again, so a snapshot costs no more than the counts.
+ *
  * @author amitjain
  *
  */
 public class Deck {
     /**
-     * List of cards in the deck.
+     * Codes of the cards in the deck. Only the first {@link #size} are still in the deck.
+     * Read only, the cards are moved through {@link #mutableCards()}.
+     */
+    protected byte[] cards;
+
+    /**
+     * Whether the cards are shared with a snapshot, and have to be copied before being moved.
+     */
+    private boolean shared;
+
+    /**
+     * Number of cards left in the deck.
+     */
+    protected int size;
+
+    /**
+     * Number of cards left of each rank indexed by the rank ordinal.
+     */
+    private final int[] rankCounts = new int[Rank.values().length];
+
+    /**
+     * Running counts attached to the deck.
      */
-    private List<Card> cards;
-    
+    private RunningCount[] counts = new RunningCount[0];
+
+    /**
+     * Source of randomness for shuffling.
+     */
+    private final RandomSource random;
+
     public Deck(int numDecks) {
-        cards = new ArrayList<Card>();
+        this(numDecks, RandomSource.THREAD_LOCAL);
+    }
+
+    /**
+     * @param numDecks the number of decks
+     * @param random the source of randomness for shuffling
+     */
+    public Deck(int numDecks, RandomSource random) {
+        this.random = random;
+        cards = new byte[numDecks * Cards.DECK_SIZE];
         /* Initialize the number of decks required. */
         for (int deck = 0; deck < numDecks; deck++) {
             /* Initialize the deck to contain all the 52 cards */
             for (Suit suit : Suit.values()) {
                 for (Rank rank : Rank.values()) {
-                    cards.add(new Card(rank, suit));
+                    cards[size++] = (byte) Cards.encode(rank, suit);
                 }
             }
         }
+        recount();
         shuffle();
     }
-    
+
     /**
      * Shuffle the card deck randomly.
      */
     public Deck shuffle() {
-        int length = cards.size();
+        byte[] cards = mutableCards();
+        int length = size;
         for (int idx = 0; idx < length; idx++) {
-            int shuffleIdx = idx + (int) (Math.random() * (length - idx));
-            Card swap = cards.get(shuffleIdx);
-            cards.set(shuffleIdx, cards.get(idx));
-            cards.set(idx, swap);
+            int shuffleIdx = idx + random.nextInt(length - idx);
+            byte swap = cards[shuffleIdx];
+            cards[shuffleIdx] = cards[idx];
+            cards[idx] = swap;
         }
         return this;
     }
-    
+
     /**
-     * Return the card at the top of the deck.
+     * Return the code of the card at the top of the deck.
      * To be a little efficient the bottom of the deck is logically treated as the top.
+     * @return the card code or -1 if the deck is empty
+     */
+    public int pop() {
+        if (size > 0) {
+            int code = cards[--size];
+            rankCounts[Cards.rankOrdinal(code)]--;
+            for (RunningCount count : counts) {
+                count.add(code);
+            }
+            return code;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the card at the top of the deck.
+     * Should only be used for presentation, see {@link #pop()}.
      * @return the card
      */
     public Card popCard() {
-        if (!cards.isEmpty()) {
-            return cards.remove(cards.size() -1);
+        int code = pop();
+        return (code < 0) ? null : Cards.toCard(code);
+    }
+
+    /**
+     * Number of cards left in the deck.
+     *
+     * @return      the number of cards
+     */
+    public int remaining() {
+        return size;
+    }
+
+    /**
+     * Number of cards left of the rank.
+     *
+     * @param rank the rank
+     * @return      the number of cards
+     */
+    public int remaining(Rank rank) {
+        return rankCounts[rank.ordinal()];
+    }
+
+    public int getNumDecks() {
+        return cards.length / Cards.DECK_SIZE;
+    }
+
+    /**
+     * Copies the codes of all the cards, the ones left in the deck first with the next card dealt last, followed
+     * by the ones dealt since the deck was shuffled.
+     *
+     * @return      the card codes
+     */
+    public byte[] order() {
+        return cards.clone();
+    }
+
+    /**
+     * Lays the cards out in the given order, e.g. to deal the cards of a deck saved with {@link #order()} again.
+     *
+     * @param order the card codes, as many as there are in the deck and of the same cards
+     * @param size the number of cards left in the deck
+     * @return      this deck
+     */
+    public Deck arrange(byte[] order, int size) {
+        if (order.length != cards.length || size < 0 || size > order.length) {
+            throw new IllegalArgumentException("The order is not of a deck of " + cards.length + " cards");
+        }
+        int[] counts = new int[Rank.values().length * Suit.values().length];
+        for (byte code : cards) {
+            counts[code]++;
+        }
+        for (byte code : order) {
+            if (code < 0 || code >= counts.length || --counts[code] < 0) {
+                throw new IllegalArgumentException("The order is not of the cards of the deck : " + code);
+            }
+        }
+        this.cards = order.clone();
+        this.shared = false;
+        this.size = size;
+        recount();
+        return this;
+    }
+
+    /**
+     * The cards to move around, copied first if they are shared with a snapshot.
+     *
+     * @return      the cards
+     */
+    protected byte[] mutableCards() {
+        if (shared) {
+            cards = cards.clone();
+            shared = false;
+        }
+        return cards;
+    }
+
+    /**
+     * Saves the state of the deck, sharing the cards with the snapshot till either of them shuffles.
+     *
+     * @param snapshot the snapshot to overwrite
+     */
+    public void save(Snapshot snapshot) {
+        shared = true;
+        snapshot.cards = cards;
+        snapshot.size = size;
+        System.arraycopy(rankCounts, 0, snapshot.rankCounts, 0, rankCounts.length);
+        if (snapshot.counts.length < counts.length) {
+            snapshot.counts = new int[counts.length];
+        }
+        snapshot.numCounts = counts.length;
+        for (int idx = 0; idx < counts.length; idx++) {
+            snapshot.counts[idx] = counts[idx].getCount();
+        }
+    }
+
+    /**
+     * Restores the state saved from this deck or from one with as many cards.
+     *
+     * @param snapshot the snapshot
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.cards == null || snapshot.cards.length != cards.length) {
+            throw new IllegalArgumentException("The snapshot is not of a deck of " + cards.length + " cards");
+        }
+        shared = true;
+        cards = snapshot.cards;
+        size = snapshot.size;
+        System.arraycopy(snapshot.rankCounts, 0, rankCounts, 0, rankCounts.length);
+        if (snapshot.numCounts == counts.length) {
+            for (int idx = 0; idx < counts.length; idx++) {
+                counts[idx].restore(snapshot.counts[idx]);
+            }
+        } else {
+            // Counts attached since the snapshot are counted again
+            recount();
+        }
+    }
+
+    /**
+     * Attaches a running count, see {@link RunningCount}. The count stays attached for the life of the deck and
+     * adds to the work of every card dealt, so it should be created once and reused.
+     *
+     * @param count the count
+     */
+    void attach(RunningCount count) {
+        RunningCount[] attached = new RunningCount[counts.length + 1];
+        System.arraycopy(counts, 0, attached, 0, counts.length);
+        attached[counts.length] = count;
+        counts = attached;
+        count.reset();
+        for (int idx = size; idx < cards.length; idx++) {
+            count.add(cards[idx]);
+        }
+    }
+
+    /**
+     * Counts the cards again after they have been moved back in the deck. The cards after the first
+     * {@link #size} are the ones out of the deck since it was shuffled.
+     */
+    protected void recount() {
+        Arrays.fill(rankCounts, 0);
+        for (int idx = 0; idx < size; idx++) {
+            rankCounts[Cards.rankOrdinal(cards[idx])]++;
+        }
+        for (RunningCount count : counts) {
+            count.reset();
+            for (int idx = size; idx < cards.length; idx++) {
+                count.add(cards[idx]);
+            }
+        }
+    }
+
+    /**
+     * Saved state of a {@link Deck}, to be reused from save to save.
+     */
+    public static class Snapshot {
+        private byte[] cards;
+
+        private int size;
+
+        private final int[] rankCounts = new int[Rank.values().length];
+
+        private int[] counts = new int[0];
+
+        private int numCounts;
+
+        /* State of a shoe */
+
+        int roundStart;
+
+        int cutCard;
+
+        /**
+         * Whether the other snapshot saved the same cards in the same order with the same counts.
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Snapshot)) {
+                return false;
+            }
+            Snapshot other = (Snapshot) obj;
+            if (size != other.size || numCounts != other.numCounts || roundStart != other.roundStart
+                    || cutCard != other.cutCard || !Arrays.equals(cards, other.cards)
+                    || !Arrays.equals(rankCounts, other.rankCounts)) {
+                return false;
+            }
+            for (int idx = 0; idx < numCounts; idx++) {
+                if (counts[idx] != other.counts[idx]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(cards) + size;
         }
-        return null;
     }
 }
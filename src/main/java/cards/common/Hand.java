@@ -1,7 +1,8 @@
 package cards.common;
 
-import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.google.common.base.Strings;
@@ -11,16 +12,57 @@ import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 
 /**
- * The class represents the individual hand in a card game
+ * The class represents the individual hand in a card game.
+ * <p>
+ * The cards are held as {@link Cards} codes along with whether each of them is dealt face up.
+ * The total value and the number of aces are kept up to date as cards are added, so reading them is O(1).
  */
 public class Hand {
+    private static final int INITIAL_CAPACITY = 8;
+    
+    private static final int ACE = Rank.ACE.ordinal();
+
+    /**
+     * Codes of the cards in the hand.
+     */
+    private byte[] cards;
+
+    /**
+     * Whether the card at the same position is dealt face down.
+     */
+    private boolean[] faceDown;
+
+    /**
+     * Number of cards in the hand.
+     */
+    private int size;
+    
+    /**
+     * Summation of the values of the cards in the hand.
+     */
+    private int value;
+    
+    /**
+     * Number of aces in the hand.
+     */
+    private int aces;
+    
     /**
-     * The cards in the hand.
+     * Values of the ranks indexed by the rank ordinal.
      */
-    private List<Card> cards;
+    private final int[] rankValues;
     
     public Hand() {
-        cards = newArrayList();
+        this(RankValue.CONVENTIONAL);
+    }
+    
+    /**
+     * @param rankValue the values of the cards in the game
+     */
+    public Hand(RankValue rankValue) {
+        rankValues = rankValue.toArray();
+        cards = new byte[INITIAL_CAPACITY];
+        faceDown = new boolean[INITIAL_CAPACITY];
     }
     
     /**
@@ -28,56 +70,129 @@ public class Hand {
      * @return the value
      */
     public int value() {
-        int value = 0;
-        for (Card card : getCards()) {
-            value += card.getValue();
-        }
         return value;
     }
     
-    /* Getters and setters */
-    public List<Card> getCards() {
-        return cards;
+    /**
+     * Number of aces in the hand.
+     * 
+     * @return      the number of aces
+     */
+    public int aceCount() {
+        return aces;
+    }
+    
+    /**
+     * Number of cards in the hand.
+     * 
+     * @return      the number of cards
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Code of the card at the given position.
+     * 
+     * @param idx the position of the card
+     * @return      the card code
+     */
+    public int cardAt(int idx) {
+        return cards[idx];
+    }
+    
+    public Rank rankAt(int idx) {
+        return Cards.rank(cards[idx]);
+    }
+    
+    public boolean isFaceUp(int idx) {
+        return !faceDown[idx];
+    }
+    
+    public Hand setFaceUp(int idx, boolean faceUp) {
+        faceDown[idx] = !faceUp;
+        return this;
+    }
+    
+    /**
+     * Removes all the cards from the hand so that it can be reused.
+     */
+    public Hand clear() {
+        size = 0;
+        value = 0;
+        aces = 0;
+        return this;
+    }
+    
+    /**
+     * Adds a card dealt face up.
+     * 
+     * @param code the code of the card
+     */
+    public void addCard(int code) {
+        if (size == cards.length) {
+            cards = Arrays.copyOf(cards, size * 2);
+            faceDown = Arrays.copyOf(faceDown, size * 2);
+        }
+        faceDown[size] = false;
+        cards[size++] = (byte) code;
+        
+        int rank = Cards.rankOrdinal(code);
+        value += rankValues[rank];
+        if (rank == ACE) {
+            aces++;
+        }
     }
 
+    /**
+     * Adds a card dealt face up.
+     * 
+     * @param card the card
+     */
     public void addCard(Card card) {
-        getCards().add(card);
+        addCard(Cards.encode(card));
+    }
+    
+    /**
+     * Lists the cards in the hand, whether each of them is face up is given by {@link #isFaceUp(int)}.
+     * Should only be used for presentation as the list is created on each call and changes to it are not
+     * reflected in the hand.
+     * 
+     * @return      the cards
+     */
+    public List<Card> getCards() {
+        List<Card> list = newArrayListWithCapacity(size);
+        for (int idx = 0; idx < size; idx++) {
+            list.add(Card.of(cards[idx]));
+        }
+        return list;
     }
     
     /**
      * Formatting cards horizontally.
      */
     public String toString() {
-        // Combine each card's print mimicking a zip with index operation
-        // Now the map contains entries by row for all cards
-        ListMultimap<Integer, String> multimap = ArrayListMultimap.create();
-        for (Card card : cards) {
-            List<String> cardRows = card.prettyPrint();
-            for (int idx = 0; idx < cardRows.size(); idx++) {
-                multimap.put(idx, cardRows.get(idx));
-            }
-        }
         StringBuilder buffer = new StringBuilder();
-        for(Integer idx : multimap.keySet()) {
-            buffer.append(String.format("%-7.7s %-7.7s %-7.7s %-7.7s%n", 
-                    Iterables.toArray(multimap.get(idx), Object.class)));
+        for (String row : prettyPrint()) {
+            buffer.append(row);
         }
         return buffer.toString();
     }
 
     public static void main(String argv[]) {
         Hand hand = new Hand();
-        Card one = new Card(Rank.ACE, Suit.DIAMOND);
+        Card one = Card.of(Rank.ACE, Suit.DIAMOND);
         
-        Card two = new Card(Rank.TWO, Suit.CLUB);
+        Card two = Card.of(Rank.TWO, Suit.CLUB);
         
-        Card three = new Card(Rank.THREE, Suit.HEART);
+        Card three = Card.of(Rank.THREE, Suit.HEART);
         
-        Card four = new Card(Rank.FOUR, Suit.SPADE);
+        Card four = Card.of(Rank.FOUR, Suit.SPADE);
         hand.addCard(one);
         hand.addCard(two);
         hand.addCard(three);
         hand.addCard(four);
+        hand.setFaceUp(3, false);
         
         System.out.println(hand);
     }
@@ -91,15 +206,15 @@ public class Hand {
         // Combine each card's print mimicking a zip with index operation
         // Now the map contains entries by row for all cards
         ListMultimap<Integer, String> multimap = ArrayListMultimap.create();
-        for (Card card : cards) {
-            List<String> cardRows = card.prettyPrint();
+        for (int card = 0; card < size; card++) {
+            List<String> cardRows = Card.of(cards[card]).prettyPrint(isFaceUp(card));
             for (int idx = 0; idx < cardRows.size(); idx++) {
                 multimap.put(idx, cardRows.get(idx));
             }
         }
 
         for(Integer idx : multimap.keySet()) {
-            rows.add(String.format(Strings.repeat("%-7.7s", cards.size()) + "%n", 
+            rows.add(String.format(Strings.repeat("%-7.7s", size) + "%n", 
                     Iterables.toArray(multimap.get(idx), Object.class)));
         }
         return rows;        
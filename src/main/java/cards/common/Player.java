@@ -26,6 +26,16 @@ public class Player {
         this.hand = new Hand();
     }
     
+    /**
+     * For a player whose hand, bet and chips are held elsewhere and who overrides their getters and setters, so
+     * that no hand is created for it.
+     * 
+     * @param hand the hand, may be null
+     */
+    protected Player(Hand hand) {
+        this.hand = hand;
+    }
+    
     public Player(String name, int bet, int chips) {
         this.name = name;
         this.bet = bet;
@@ -0,0 +1,32 @@
+package cards.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Source of randomness used to shuffle the cards.
+ * <p>
+ * Contains a default implementation backed by {@link ThreadLocalRandom} exposed as an instance variable, which
+ * can be shared by decks on any thread without contention. Use a {@link SplitMixRandom} for reproducible
+ * shuffles.
+ */
+public interface RandomSource {
+    /**
+     * Returns a uniformly distributed value between 0 (inclusive) and the bound (exclusive).
+     *
+     * @param bound the upper bound, must be positive
+     * @return      the random value
+     */
+    int nextInt(int bound);
+
+    /**
+     * Default implementation delegating to the random generator of the calling thread.
+     */
+    static class ThreadLocalSource implements RandomSource {
+        @Override
+        public int nextInt(int bound) {
+            return ThreadLocalRandom.current().nextInt(bound);
+        }
+    }
+
+    RandomSource THREAD_LOCAL = new ThreadLocalSource();
+}
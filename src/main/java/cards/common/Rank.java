@@ -31,9 +31,12 @@ public enum Rank {
         return display;
     }
     
+    /**
+     * The conventional value of the rank. Games valuing the ranks differently use their own {@link RankValue}.
+     * 
+     * @return the value
+     */
     public int getValue() {
-        return rankValue.getValue(this);
+        return RankValue.CONVENTIONAL.getValue(this);
     }
-    
-    public static RankValue rankValue;        
 }
\ No newline at end of file
@@ -10,6 +10,10 @@ import cards.common.Rank;
  *
  */
 public class RankValue {
+    /**
+     * The conventional values, Ace as 1 through King as 13.
+     */
+    public static final RankValue CONVENTIONAL = new RankValue();
 
     public int getValue(Rank rank) {
         switch(rank) {
@@ -42,4 +46,18 @@ public class RankValue {
         }
     }
 
+    /**
+     * Values of all the ranks indexed by the rank ordinal, for fast lookups.
+     * 
+     * @return      the values
+     */
+    public int[] toArray() {
+        Rank[] ranks = Rank.values();
+        int[] values = new int[ranks.length];
+        for (Rank rank : ranks) {
+            values[rank.ordinal()] = getValue(rank);
+        }
+        return values;
+    }
+
 }
@@ -0,0 +1,87 @@
+package cards.common;
+
+/**
+ * Running count of the cards dealt from a {@link Deck}, weighting each card by the tag of its rank.
+ * <p>
+ * The count is attached to the deck when created and is updated by the deck in constant time on every card dealt.
+ * It is reset to the initial count when the deck is reshuffled.
+ */
+public class RunningCount {
+    private final Deck deck;
+
+    /**
+     * Tags of the ranks indexed by the rank ordinal.
+     */
+    private final int[] tags;
+
+    /**
+     * Count of a freshly shuffled deck.
+     */
+    private final int initialCount;
+
+    private int count;
+
+    /**
+     * Creates the count and attaches it to the deck. Counts the cards already dealt from the deck.
+     *
+     * @param deck the deck to count
+     * @param tags the tags of the ranks indexed by the rank ordinal
+     * @param initialCount the count of a freshly shuffled deck
+     */
+    public RunningCount(Deck deck, int[] tags, int initialCount) {
+        if (tags.length != Rank.values().length) {
+            throw new IllegalArgumentException("A tag is needed for each rank : " + tags.length);
+        }
+        this.deck = deck;
+        this.tags = tags.clone();
+        this.initialCount = initialCount;
+        deck.attach(this);
+    }
+
+    /**
+     * Starts the count over, for a freshly shuffled deck.
+     */
+    void reset() {
+        count = initialCount;
+    }
+
+    /**
+     * Sets the count back to a value saved earlier.
+     *
+     * @param count the count
+     */
+    void restore(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Counts a card dealt.
+     *
+     * @param code the card code
+     */
+    void add(int code) {
+        count += tags[Cards.rankOrdinal(code)];
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getInitialCount() {
+        return initialCount;
+    }
+
+    public int tag(Rank rank) {
+        return tags[rank.ordinal()];
+    }
+
+    /**
+     * The running count per deck left to be dealt.
+     *
+     * @return      the true count or the running count if the deck is empty
+     */
+    public double trueCount() {
+        int remaining = deck.remaining();
+        return (remaining == 0) ? count : count * (double) Cards.DECK_SIZE / remaining;
+    }
+}
@@ -0,0 +1,166 @@
+package cards.common;
+
+/**
+ * Multi deck shoe which is dealt from across rounds till the cut card is reached.
+ * <p>
+ * The cards dealt are not returned to the shoe till it is reshuffled in place, so the composition of the shoe
+ * carries over from one round to the next like in a casino. A round is started with {@link #beginRound()}
+ * which reshuffles the shoe once the cut card has come out.
+ */
+public class Shoe extends Deck {
+    /**
+     * Fraction of the shoe dealt before the cut card comes out, by default.
+     */
+    public static final double DEFAULT_PENETRATION = 0.75;
+
+    /**
+     * Number of cards left behind the cut card.
+     */
+    private int cutCard;
+
+    /**
+     * Number of cards in the shoe when the current round started.
+     * The cards after this position are the discards of the earlier rounds.
+     */
+    private int roundStart;
+
+    /**
+     * Buffer to hold the cards in play while the discards are reshuffled. Created when first needed.
+     */
+    private byte[] inPlay;
+
+    public Shoe(int numDecks) {
+        this(numDecks, DEFAULT_PENETRATION);
+    }
+
+    /**
+     * @param numDecks the number of decks in the shoe
+     * @param penetration the fraction of the shoe to deal before reshuffling (0 - 1)
+     */
+    public Shoe(int numDecks, double penetration) {
+        this(numDecks, penetration, RandomSource.THREAD_LOCAL);
+    }
+
+    /**
+     * @param numDecks the number of decks in the shoe
+     * @param penetration the fraction of the shoe to deal before reshuffling (0 - 1)
+     * @param random the source of randomness for shuffling
+     */
+    public Shoe(int numDecks, double penetration, RandomSource random) {
+        super(numDecks, random);
+        if (penetration <= 0 || penetration > 1) {
+            throw new IllegalArgumentException("Penetration should be in (0, 1] : " + penetration);
+        }
+        this.cutCard = cards.length - (int) (cards.length * penetration);
+        this.roundStart = size;
+    }
+
+    /**
+     * Places the cut card with the given number of cards behind it.
+     *
+     * @param cardsBehind the number of cards left in the shoe when the cut card comes out
+     * @return      this shoe
+     */
+    public Shoe cutAt(int cardsBehind) {
+        if (cardsBehind < 0 || cardsBehind >= cards.length) {
+            throw new IllegalArgumentException("Cut card should be inside the shoe : " + cardsBehind);
+        }
+        this.cutCard = cardsBehind;
+        return this;
+    }
+
+    public int getCutCard() {
+        return cutCard;
+    }
+
+    /**
+     * Whether the cut card has come out and the shoe should be reshuffled before the next round.
+     *
+     * @return      true if the cut card has been reached
+     */
+    public boolean isCutCardReached() {
+        return size <= cutCard;
+    }
+
+    /**
+     * Starts a new round, reshuffling the shoe if the cut card has been reached.
+     *
+     * @return      true if the shoe was reshuffled
+     */
+    public boolean beginRound() {
+        boolean reshuffle = isCutCardReached();
+        if (reshuffle) {
+            reshuffle();
+        }
+        roundStart = size;
+        return reshuffle;
+    }
+
+    /**
+     * Collects all the cards back in the shoe and shuffles them in place.
+     */
+    public Shoe reshuffle() {
+        size = cards.length;
+        roundStart = size;
+        recount();
+        shuffle();
+        return this;
+    }
+
+    /**
+     * Lays the cards out in the given order, starting a new round with the cards left.
+     */
+    @Override
+    public Shoe arrange(byte[] order, int size) {
+        super.arrange(order, size);
+        roundStart = size;
+        return this;
+    }
+
+    @Override
+    public void save(Snapshot snapshot) {
+        super.save(snapshot);
+        snapshot.roundStart = roundStart;
+        snapshot.cutCard = cutCard;
+    }
+
+    @Override
+    public void restore(Snapshot snapshot) {
+        super.restore(snapshot);
+        roundStart = snapshot.roundStart;
+        cutCard = snapshot.cutCard;
+    }
+
+    /**
+     * Returns the code of the next card. If the shoe runs out in the middle of a round, the discards of the
+     * earlier rounds are reshuffled while the cards in play are kept out.
+     *
+     * @return the card code or -1 if all the cards are in play
+     */
+    @Override
+    public int pop() {
+        if (size == 0 && roundStart < cards.length) {
+            reshuffleDiscards();
+        }
+        return super.pop();
+    }
+
+    /**
+     * Moves the discards in front of the cards in play and shuffles them.
+     */
+    private void reshuffleDiscards() {
+        if (inPlay == null) {
+            inPlay = new byte[cards.length];
+        }
+        byte[] cards = mutableCards();
+        int numInPlay = roundStart;
+        int numDiscards = cards.length - roundStart;
+        System.arraycopy(cards, 0, inPlay, 0, numInPlay);
+        System.arraycopy(cards, roundStart, cards, 0, numDiscards);
+        System.arraycopy(inPlay, 0, cards, numDiscards, numInPlay);
+        size = numDiscards;
+        roundStart = cards.length;
+        recount();
+        shuffle();
+    }
+}
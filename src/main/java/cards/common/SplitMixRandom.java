@@ -0,0 +1,69 @@
+package cards.common;
+
+/**
+ * Seedable {@link RandomSource} implementing the SplitMix64 generator, the algorithm behind
+ * {@code java.util.SplittableRandom}.
+ * <p>
+ * The same seed always produces the same sequence, so shuffles can be replayed. An instance is not thread safe;
+ * use {@link #split()} to derive independent generators for other threads.
+ */
+public class SplitMixRandom implements RandomSource {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+
+    public SplitMixRandom(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Derives the seed for the stream at the given index, e.g. a simulation task, from a base seed.
+     *
+     * @param seed the base seed
+     * @param index the index of the stream
+     * @return      the derived seed
+     */
+    public static long seedFor(long seed, long index) {
+        return mix64(seed + index * GOLDEN_GAMMA);
+    }
+
+    public long nextLong() {
+        return mix64(seed += GOLDEN_GAMMA);
+    }
+
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("Bound should be positive : " + bound);
+        }
+        int value = nextInt();
+        int mask = bound - 1;
+        if ((bound & mask) == 0) {
+            return value & mask;
+        }
+        // Reject the values from the last incomplete range to stay unbiased
+        for (int unsigned = value >>> 1; unsigned + mask - (value = unsigned % bound) < 0;
+                unsigned = nextInt() >>> 1) {
+        }
+        return value;
+    }
+
+    /**
+     * Creates a new generator seeded from this one, to be used independently.
+     *
+     * @return      the new generator
+     */
+    public SplitMixRandom split() {
+        return new SplitMixRandom(nextLong());
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,91 @@
+package cards.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed set of counters which many threads can add to at once with little contention.
+ * <p>
+ * Each counter is kept in a number of stripes and a thread adds to the stripe picked by its id, so threads mostly
+ * update different cache lines. The stripes are summed up when a counter is read, which makes reading slower than
+ * adding; counters are meant to be written on the hot path and read rarely, e.g. for monitoring.
+ */
+public class StripedCounters {
+    /**
+     * Longs in a cache line, to pad the stripes apart.
+     */
+    private static final int LINE = 8;
+
+    private final AtomicLongArray cells;
+
+    private final int size;
+
+    /**
+     * Distance between the stripes in the cells.
+     */
+    private final int stride;
+
+    private final int stripeMask;
+
+    /**
+     * Creates the counters with a stripe per processor.
+     *
+     * @param size the number of counters
+     */
+    public StripedCounters(int size) {
+        this(size, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param size the number of counters
+     * @param concurrency the number of threads expected to add at once, rounded up to a power of two
+     */
+    public StripedCounters(int size, int concurrency) {
+        int stripes = Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1;
+        this.size = size;
+        this.stride = ((size + LINE - 1) / LINE + 1) * LINE;
+        this.stripeMask = stripes - 1;
+        this.cells = new AtomicLongArray(stripes * stride);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param idx the index of the counter
+     * @param delta the amount to add
+     */
+    public void add(int idx, long delta) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        cells.getAndAdd(stripe * stride + idx, delta);
+    }
+
+    public void increment(int idx) {
+        add(idx, 1);
+    }
+
+    /**
+     * Sums a counter over the stripes. Not an atomic snapshot if other threads are adding at the same time.
+     *
+     * @param idx the index of the counter
+     * @return      the value of the counter
+     */
+    public long sum(int idx) {
+        long sum = 0;
+        for (int cell = idx; cell < cells.length(); cell += stride) {
+            sum += cells.get(cell);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets all the counters back to zero. Adds made at the same time may be lost.
+     */
+    public void reset() {
+        for (int cell = 0; cell < cells.length(); cell++) {
+            cells.set(cell, 0);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package cards.blackjack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+import cards.common.Cards;
+import cards.common.Rank;
+import cards.common.Shoe;
+
+public class BlackjackTest {
+    private static final int[] BET = {10};
+
+    @Test
+    public void resplitsUpToTheMaxSplitHands() {
+        Blackjack game = deal(TableRules.builder().maxSplitHands(3).build(),
+                Rank.EIGHT, Rank.EIGHT, Rank.EIGHT, Rank.EIGHT, Rank.TWO);
+        BlackjackPlayer player = game.currentPlayer();
+
+        assertEquals(GameState.INPLAY, game.action(Action.SPLIT));
+        assertEquals(2, player.getHandCount());
+        assertTrue(player.canSplit());
+        assertEquals(GameState.INPLAY, game.action(Action.SPLIT));
+        assertEquals(3, player.getHandCount());
+
+        // A pair again, but the seat already holds as many hands as allowed
+        assertEquals(Rank.EIGHT, player.getHand().rankAt(1));
+        assertFalse(player.canSplit());
+        assertFalse(game.isLegal(Action.SPLIT));
+        try {
+            game.action(Action.SPLIT);
+            fail("The hand was split past the max split hands");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(3, player.getHandCount());
+        for (int hand = 0; hand < 3; hand++) {
+            assertEquals(10, player.getBet(hand));
+        }
+    }
+
+    @Test
+    public void standsOnSplitAces() {
+        Blackjack game = deal(TableRules.builder().splitAces(true).build(), Rank.ACE, Rank.ACE, Rank.FIVE, Rank.SIX);
+        BlackjackPlayer player = game.currentPlayer();
+
+        // Each ace takes a single card and the round goes on to the dealer, who stands on 17
+        GameState state = game.action(Action.SPLIT);
+        assertTrue(state != GameState.INPLAY);
+        assertEquals(2, player.getHandCount());
+        assertEquals(2, player.getHand(0).size());
+        assertEquals(2, player.getHand(1).size());
+        assertEquals(Rank.FIVE, player.getHand(0).rankAt(1));
+        assertEquals(Rank.SIX, player.getHand(1).rankAt(1));
+    }
+
+    @Test
+    public void refusesToSplitAcesIfNotAllowed() {
+        Blackjack game = deal(TableRules.builder().splitAces(false).build(), Rank.ACE, Rank.ACE);
+
+        assertFalse(game.currentPlayer().canSplit());
+        assertFalse(game.isLegal(Action.SPLIT));
+    }
+
+    @Test
+    public void doublesDownAfterSplitIfAllowed() {
+        Blackjack game = deal(TableRules.builder().doubleAfterSplit(true).build(),
+                Rank.EIGHT, Rank.EIGHT, Rank.THREE, Rank.FIVE);
+        BlackjackPlayer player = game.currentPlayer();
+        game.action(Action.SPLIT);
+
+        assertTrue(game.isLegal(Action.DOUBLEDOWN));
+        assertEquals(GameState.INPLAY, game.action(Action.DOUBLEDOWN));
+        assertEquals(20, player.getBet(0));
+        assertEquals(PlayerState.DOUBLE_DOWN, player.getState(0));
+        assertEquals(3, player.getHand(0).size());
+        // On to the second hand
+        assertEquals(1, player.getActiveHand());
+        assertEquals(10, player.getBet(1));
+    }
+
+    @Test
+    public void refusesToDoubleDownAfterSplitIfNotAllowed() {
+        Blackjack game = deal(TableRules.builder().doubleAfterSplit(false).build(),
+                Rank.EIGHT, Rank.EIGHT, Rank.THREE);
+        BlackjackPlayer player = game.currentPlayer();
+        game.action(Action.SPLIT);
+
+        assertFalse(player.canDoubleDown());
+        assertFalse(game.isLegal(Action.DOUBLEDOWN));
+        try {
+            game.action(Action.DOUBLEDOWN);
+            fail("The split hand was doubled down");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(10, player.getBet(0));
+        assertEquals(PlayerState.INPLAY, player.getState(0));
+    }
+
+    /**
+     * Deals a round to a single player from a shoe stacked with the dealer holding a ten and a seven.
+     *
+     * @param rules the rules of the table
+     * @param player the first two cards of the player followed by the next cards dealt
+     * @return      the game with the player in turn
+     */
+    private static Blackjack deal(TableRules rules, Rank... player) {
+        Rank[] dealt = new Rank[player.length + 2];
+        // The cards are dealt in turns, the dealer first
+        dealt[0] = Rank.TEN;
+        dealt[1] = player[0];
+        dealt[2] = Rank.SEVEN;
+        dealt[3] = player[1];
+        System.arraycopy(player, 2, dealt, 4, player.length - 2);
+
+        Blackjack game = new Blackjack(1, 100, rules);
+        stack(game.shoe(), dealt);
+        assertEquals(GameState.INPLAY, game.action(Action.DEAL, BET));
+        assertEquals(1, game.players().indexOf(game.currentPlayer()));
+        return game;
+    }
+
+    /**
+     * Moves cards of the ranks to the top of the shoe, to be dealt in the order given.
+     */
+    private static void stack(Shoe shoe, Rank... ranks) {
+        byte[] order = shoe.order();
+        // The last card is dealt first
+        int top = order.length;
+        for (Rank rank : ranks) {
+            int idx = 0;
+            while (rank != Cards.rank(order[idx])) {
+                idx++;
+            }
+            assertTrue(idx < top);
+            byte swap = order[--top];
+            order[top] = order[idx];
+            order[idx] = swap;
+        }
+        shoe.arrange(order, order.length);
+    }
+}
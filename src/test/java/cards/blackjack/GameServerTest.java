@@ -0,0 +1,152 @@
+package cards.blackjack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+
+import com.google.common.base.Function;
+
+public class GameServerTest {
+    private static final int TABLES = 50;
+
+    private static final int MESSAGES = 2000;
+
+    private GameServer server;
+
+    @Before
+    public void setUp() {
+        server = new GameServer(Executors.newFixedThreadPool(4));
+    }
+
+    @After
+    public void tearDown() {
+        server.shutdown();
+    }
+
+    @Test
+    public void runsTheMessagesOfATableInOrder() throws Exception {
+        int[] tableIds = new int[TABLES];
+        List<List<Integer>> received = new ArrayList<List<Integer>>();
+        for (int table = 0; table < TABLES; table++) {
+            tableIds[table] = server.openTable(1, 100, TableRules.builder().build());
+            received.add(new ArrayList<Integer>());
+        }
+
+        // Interleaved over the tables, each table only ever being run by one thread at a time
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int message = 0; message < MESSAGES; message++) {
+            for (int table = 0; table < TABLES; table++) {
+                futures.add(server.enqueue(tableIds[table], append(received.get(table), message)));
+            }
+        }
+        for (Future<Void> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        for (List<Integer> messages : received) {
+            assertEquals(MESSAGES, messages.size());
+            for (int message = 0; message < MESSAGES; message++) {
+                assertEquals(message, (int) messages.get(message));
+            }
+        }
+    }
+
+    @Test
+    public void playsTheActionsSubmittedInOrder() throws Exception {
+        int tableId = server.openTable(1, 100, TableRules.builder().build());
+        Future<GameState> deal = server.submit(tableId, Action.DEAL, new int[] {10});
+        Future<GameState> stand = null;
+        if (deal.get(10, TimeUnit.SECONDS) == GameState.INPLAY) {
+            stand = server.submit(tableId, Action.STAND, new int[0]);
+        }
+        Future<GameState> reset = server.submit(tableId, Action.RESET, new int[0]);
+
+        if (stand != null) {
+            assertTrue(stand.get(10, TimeUnit.SECONDS) != GameState.INPLAY);
+        }
+        assertEquals(GameState.START, reset.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectsWorkAfterShutdown() {
+        int tableId = server.openTable(1, 100, TableRules.builder().build());
+        server.shutdown();
+
+        try {
+            server.submit(tableId, Action.DEAL, new int[] {10});
+            fail("The action was accepted after the shutdown");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        try {
+            server.openTable(1, 100, TableRules.builder().build());
+            fail("The table was opened after the shutdown");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void runsTheMessagesQueuedBeforeTheTableIsClosed() throws Exception {
+        int tableId = server.openTable(1, 100, TableRules.builder().build());
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        server.enqueue(tableId, new Function<Blackjack, Void>() {
+            @Override
+            public Void apply(Blackjack game) {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+        });
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        List<Integer> received = new ArrayList<Integer>();
+        Future<Void> queued = server.enqueue(tableId, append(received, 1));
+        Future<GameState> deal = server.submit(tableId, Action.DEAL, new int[] {10});
+
+        assertTrue(server.closeTable(tableId));
+        assertFalse(server.closeTable(tableId));
+        assertEquals(0, server.tableCount());
+        try {
+            server.submit(tableId, Action.STAND, new int[0]);
+            fail("The action was accepted by a closed table");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        release.countDown();
+        queued.get(10, TimeUnit.SECONDS);
+        assertEquals(1, received.size());
+        assertTrue(deal.get(10, TimeUnit.SECONDS) != GameState.START);
+    }
+
+    private static Function<Blackjack, Void> append(final List<Integer> messages, final int message) {
+        return new Function<Blackjack, Void>() {
+            @Override
+            public Void apply(Blackjack game) {
+                messages.add(message);
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package cards.blackjack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.BlackjackPlayer.PlayerState;
+
+public class HandHistoryStoreTest {
+    private static final int SEGMENT_RECORDS = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTheHandsBackAfterReopening() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (HandHistoryStore store = new HandHistoryStore(directory, 3, SEGMENT_RECORDS)) {
+            store.write(100, new HandHistoryStore.HandRecord().reset(2).setCards(1, 2).addAction(Action.HIT)
+                    .setState(PlayerState.BUST).setChipsDelta(-1));
+        }
+
+        try (HandHistoryStore store = new HandHistoryStore(directory, 3, SEGMENT_RECORDS)) {
+            HandHistoryStore.Cursor cursor = store.cursor();
+            assertTrue(cursor.seek(100, 2));
+            assertEquals(Action.HIT, cursor.getAction(0));
+            assertEquals(PlayerState.BUST, cursor.getState());
+            assertEquals(-1, cursor.getChipsDelta(), 0);
+            assertFalse(cursor.seek(100, 3));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesOtherSeatsPerRound() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        new HandHistoryStore(directory, 3, SEGMENT_RECORDS).close();
+
+        new HandHistoryStore(directory, 4, SEGMENT_RECORDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesOtherRecordsPerSegment() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        new HandHistoryStore(directory, 3, SEGMENT_RECORDS).close();
+
+        new HandHistoryStore(directory, 3, 2 * SEGMENT_RECORDS);
+    }
+
+    @Test(expected = IOException.class)
+    public void refusesSegmentsWithoutHeader() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (HandHistoryStore store = new HandHistoryStore(directory, 3, SEGMENT_RECORDS)) {
+            store.write(0, new HandHistoryStore.HandRecord().reset(1).setState(PlayerState.STAND_DOWN));
+        }
+        Files.delete(directory.resolve("hands.header"));
+
+        new HandHistoryStore(directory, 3, SEGMENT_RECORDS);
+    }
+}
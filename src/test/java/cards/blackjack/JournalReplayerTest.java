@@ -0,0 +1,155 @@
+package cards.blackjack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.common.SplitMixRandom;
+
+public class JournalReplayerTest {
+    private static final int PLAYERS = 3;
+
+    private static final int ROUNDS = 40;
+
+    private static final int[] BETS = {10, 20, 30};
+
+    /**
+     * Number of splits and of actions refused in the rounds played.
+     */
+    private int splits;
+
+    private int refused;
+
+    @Test
+    public void replaysTheRoundsPlayed() throws IOException {
+        // A single deck shuffled a few times over the rounds
+        Blackjack game = new Blackjack(PLAYERS, 1000, TableRules.builder().decks(1).build(), new SplitMixRandom(7));
+        RoundJournal journal = new RoundJournal();
+        game.setJournal(journal);
+        play(game, ROUNDS);
+        assertTrue(splits > 0);
+        assertTrue(refused > 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        journal.writeTo(out);
+        Blackjack replayed = JournalReplayer.replay(RoundJournal.readFrom(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(game.getState(), replayed.getState());
+        assertEquals(game.snapshot(), replayed.snapshot());
+        for (int seat = 1; seat <= PLAYERS; seat++) {
+            assertEquals(game.players().get(seat).getChips(), replayed.players().get(seat).getChips(), 0);
+        }
+
+        // Played on after the journal
+        play(replayed, 5);
+    }
+
+    @Test
+    public void replaysTheFirstActions() {
+        Blackjack game = new Blackjack(PLAYERS, 1000, TableRules.builder().decks(1).build(), new SplitMixRandom(7));
+        RoundJournal journal = new RoundJournal();
+        game.setJournal(journal);
+        play(game, 1);
+        TableSnapshot snapshot = game.snapshot();
+        play(game, ROUNDS);
+
+        assertEquals(snapshot, JournalReplayer.replay(journal, actions(journal, 1)).snapshot());
+    }
+
+    @Test
+    public void replaysAnExhaustedShoe() {
+        // Too many players for a single deck
+        Blackjack game = new Blackjack(30, 1000, TableRules.builder().decks(1).build(), new SplitMixRandom(3));
+        RoundJournal journal = new RoundJournal();
+        game.setJournal(journal);
+        int[] bets = new int[30];
+        Arrays.fill(bets, 10);
+        try {
+            game.action(Action.DEAL, bets);
+            fail("The shoe was not exhausted");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        Blackjack replayed = JournalReplayer.replay(journal);
+        assertEquals(game.snapshot(), replayed.snapshot());
+        assertEquals(GameState.START, replayed.action(Action.RESET));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesAJournalOfOtherCards() throws IOException {
+        Blackjack game = new Blackjack(PLAYERS, 1000, TableRules.builder().decks(1).build(), new SplitMixRandom(7));
+        RoundJournal journal = new RoundJournal();
+        game.setJournal(journal);
+        play(game, 3);
+        byte[] bytes = journal.toByteArray();
+
+        // Record another rank for the first card dealt
+        RoundJournal.Reader reader = journal.reader();
+        while (reader.next() != RoundJournal.Event.CARD) {
+        }
+        bytes[reader.position() - 1] ^= 4;
+
+        JournalReplayer.replay(RoundJournal.readFrom(new ByteArrayInputStream(frame(bytes))));
+    }
+
+    /**
+     * Plays the rounds splitting every pair and trying to double down every hand of 3 cards, which is refused.
+     */
+    private void play(Blackjack game, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            GameState state = game.action(Action.DEAL, BETS);
+            while (state == GameState.INPLAY) {
+                BlackjackPlayer player = game.currentPlayer();
+                if (player.canSplit()) {
+                    splits++;
+                    state = game.action(Action.SPLIT);
+                } else if (player.getHand().size() == 3 && player.value() < 21) {
+                    try {
+                        game.action(Action.DOUBLEDOWN);
+                        fail("A hand of 3 cards was doubled down");
+                    } catch (IllegalStateException e) {
+                        refused++;
+                    }
+                    state = game.action(Action.STAND);
+                } else {
+                    state = game.action(player.value() < 15 ? Action.HIT : Action.STAND);
+                }
+            }
+        }
+    }
+
+    private static int actions(RoundJournal journal, int rounds) {
+        RoundJournal.Reader reader = journal.reader();
+        int actions = 0;
+        int deals = 0;
+        while (reader.next() != null) {
+            if (reader.getEvent() == RoundJournal.Event.ACTION) {
+                if (reader.getAction() == Action.DEAL && deals++ == rounds) {
+                    return actions;
+                }
+                actions++;
+            }
+        }
+        return actions;
+    }
+
+    private static byte[] frame(byte[] bytes) {
+        byte[] framed = new byte[bytes.length + 4];
+        framed[0] = (byte) (bytes.length >>> 24);
+        framed[1] = (byte) (bytes.length >>> 16);
+        framed[2] = (byte) (bytes.length >>> 8);
+        framed[3] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, framed, 4, bytes.length);
+        return framed;
+    }
+}
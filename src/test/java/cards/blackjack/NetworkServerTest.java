@@ -0,0 +1,332 @@
+package cards.blackjack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+
+public class NetworkServerTest {
+    private static final int TIMEOUT = 10000;
+
+    private GameServer games;
+
+    private NetworkServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        games = new GameServer(Executors.newFixedThreadPool(2));
+        server = new NetworkServer(games, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        games.shutdown();
+    }
+
+    @Test
+    public void opensATable() throws IOException {
+        try (Client client = new Client()) {
+            int tableId = client.open(2, 6, 100);
+
+            assertTrue(tableId > 0);
+            assertEquals(1, games.tableCount());
+        }
+    }
+
+    @Test
+    public void pushesTheStateAfterEachAction() throws IOException {
+        try (Client client = new Client()) {
+            int tableId = client.open(1, 6, 100);
+
+            State state = client.action(tableId, Action.DEAL, 10);
+            assertEquals(tableId, state.tableId);
+            assertEquals(2, state.seats);
+            assertEquals(10, state.bets[1]);
+            if (state.game == GameState.INPLAY) {
+                // The hole card of the dealer is only shown once the round is over
+                assertEquals(BinaryStateEncoder.HIDDEN, state.cards[0][1]);
+                assertEquals(1, state.currentSeat);
+                assertTrue(state.allows(Action.STAND));
+                assertFalse(state.allows(Action.DEAL));
+
+                state = client.action(tableId, Action.STAND);
+            }
+            assertTrue(state.game == GameState.WIN || state.game == GameState.PUSH);
+            assertTrue(state.cards[0][1] != BinaryStateEncoder.HIDDEN);
+            assertTrue(state.allows(Action.DEAL));
+        }
+    }
+
+    @Test
+    public void refusesMalformedRequests() throws IOException {
+        try (Client client = new Client()) {
+            // An OPEN missing its chips
+            client.send(new byte[] {0, 3, NetworkServer.OPEN, 1, 6});
+            assertEquals(NetworkServer.OPEN, client.error());
+
+            client.send(new byte[] {0, 1, 0x7F});
+            assertEquals(0x7F, client.error());
+
+            int tableId = client.open(1, 6, 100);
+            client.send(action(tableId, Action.DEAL.getOpcode(), -10));
+            assertEquals(NetworkServer.ACTION, client.error());
+            client.send(action(tableId, Action.DEAL.getOpcode(), 1000));
+            assertEquals(NetworkServer.ACTION, client.error());
+
+            // Still served
+            assertEquals(GameState.START, client.join(tableId).game);
+        }
+    }
+
+    @Test
+    public void answersPipelinedRequests() throws IOException {
+        try (Client client = new Client()) {
+            int tableId = client.open(1, 6, 100);
+            int requests = 10 * NetworkServer.MAX_IN_FLIGHT;
+
+            // Sent before reading any answer, the server holding back from reading the rest while too many are queued
+            for (int request = 0; request < requests; request++) {
+                client.out.write(join(tableId));
+            }
+            client.out.flush();
+            for (int request = 0; request < requests; request++) {
+                assertEquals(GameState.START, client.state().game);
+            }
+            assertEquals(2, client.action(tableId, Action.DEAL, 10).seats);
+        }
+    }
+
+    @Test
+    public void closesTheTableWhenNoOneFollowsIt() throws Exception {
+        try (Client client = new Client()) {
+            int tableId = client.open(1, 6, 100);
+            client.send(leave(tableId));
+            client.open(1, 6, 100);
+            waitFor(1);
+        }
+        waitFor(0);
+    }
+
+    @Test
+    public void disconnectsASlowFollower() throws IOException {
+        try (Client player = new Client(); Client follower = new Client(1024)) {
+            int players = 50;
+            int tableId = player.open(players, 6, 1000000);
+            follower.send(join(tableId));
+
+            // Play till far more was pushed than the follower, not reading, can have buffered
+            int[] bets = new int[players];
+            Arrays.fill(bets, 1);
+            long pushed = 0;
+            while (pushed < 32L * 1024 * 1024) {
+                State state = player.action(tableId, Action.DEAL, bets);
+                pushed += state.length;
+                while (state.game == GameState.INPLAY) {
+                    state = player.action(tableId, Action.STAND);
+                    pushed += state.length;
+                }
+            }
+
+            long received = 0;
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = follower.in.read(buffer)) >= 0) {
+                    received += read;
+                }
+            } catch (SocketException e) {
+                // Reset by the server
+            }
+            assertTrue(received < pushed);
+            // The player kept being served
+            assertEquals(players + 1, player.action(tableId, Action.DEAL, bets).seats);
+        }
+    }
+
+    private void waitFor(int tables) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (games.tableCount() != tables && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(tables, games.tableCount());
+    }
+
+    private static byte[] join(int tableId) {
+        return ByteBuffer.allocate(7).putShort((short) 5).put((byte) NetworkServer.JOIN).putInt(tableId).array();
+    }
+
+    private static byte[] leave(int tableId) {
+        return ByteBuffer.allocate(7).putShort((short) 5).put((byte) NetworkServer.LEAVE).putInt(tableId).array();
+    }
+
+    private static byte[] action(int tableId, int opcode, int... params) {
+        int length = 8 + 4 * params.length;
+        ByteBuffer buffer = ByteBuffer.allocate(NetworkServer.HEADER + length);
+        buffer.putShort((short) length).put((byte) NetworkServer.ACTION).putInt(tableId).put((byte) opcode)
+                .putShort((short) params.length);
+        for (int param : params) {
+            buffer.putInt(param);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Blocking client over loopback.
+     */
+    private class Client implements AutoCloseable {
+        private final Socket socket = new Socket();
+
+        private final DataInputStream in;
+
+        private final DataOutputStream out;
+
+        Client() throws IOException {
+            this(0);
+        }
+
+        /**
+         * @param receiveBuffer the size of the receive buffer, 0 for the default
+         */
+        Client(int receiveBuffer) throws IOException {
+            if (receiveBuffer > 0) {
+                socket.setReceiveBufferSize(receiveBuffer);
+            }
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), TIMEOUT);
+            socket.setSoTimeout(TIMEOUT);
+            in = new DataInputStream(socket.getInputStream());
+            out = new DataOutputStream(socket.getOutputStream());
+        }
+
+        int open(int players, int decks, int chips) throws IOException {
+            send(ByteBuffer.allocate(9).putShort((short) 7).put((byte) NetworkServer.OPEN).put((byte) players)
+                    .put((byte) decks).putInt(chips).array());
+            ByteBuffer frame = read();
+            assertEquals(NetworkServer.OPENED, frame.get() & 0xFF);
+            return frame.getInt();
+        }
+
+        State join(int tableId) throws IOException {
+            send(NetworkServerTest.join(tableId));
+            return state();
+        }
+
+        State action(int tableId, Action action, int... params) throws IOException {
+            send(NetworkServerTest.action(tableId, action.getOpcode(), params));
+            return state();
+        }
+
+        void send(byte[] frame) throws IOException {
+            out.write(frame);
+            out.flush();
+        }
+
+        State state() throws IOException {
+            ByteBuffer frame = read();
+            int type = frame.get() & 0xFF;
+            if (type == NetworkServer.ERROR) {
+                throw new AssertionError("Refused : " + new String(frame.array(), 2, frame.limit() - 2,
+                        StandardCharsets.UTF_8));
+            }
+            assertEquals(NetworkServer.STATE, type);
+            return new State(frame);
+        }
+
+        /**
+         * @return      the type of the request refused
+         */
+        int error() throws IOException {
+            ByteBuffer frame = read();
+            assertEquals(NetworkServer.ERROR, frame.get() & 0xFF);
+            return frame.get() & 0xFF;
+        }
+
+        ByteBuffer read() throws IOException {
+            byte[] frame = new byte[in.readUnsignedShort()];
+            in.readFully(frame);
+            return ByteBuffer.wrap(frame);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * A STATE frame decoded as written by the {@link BinaryStateEncoder}, only keeping the first hand of each seat.
+     */
+    private static class State {
+        private final int length;
+
+        private final int tableId;
+
+        private final GameState game;
+
+        private final int actionMask;
+
+        private final int currentSeat;
+
+        private final int seats;
+
+        private final int[] bets;
+
+        private final int[][] cards;
+
+        State(ByteBuffer frame) {
+            length = frame.limit();
+            tableId = frame.getInt();
+            game = GameState.values()[frame.get()];
+            actionMask = frame.getShort() & 0xFFFF;
+            currentSeat = frame.getShort() & 0xFFFF;
+            seats = frame.getShort() & 0xFFFF;
+            bets = new int[seats];
+            cards = new int[seats][];
+            for (int seat = 0; seat < seats; seat++) {
+                // The chips, hands, hand in play and state visible
+                frame.getDouble();
+                int hands = frame.get() & 0xFF;
+                frame.get();
+                frame.get();
+                for (int hand = 0; hand < hands; hand++) {
+                    int bet = frame.getInt();
+                    // The state of the hand and its rule
+                    frame.get();
+                    frame.get();
+                    int[] codes = new int[frame.get() & 0xFF];
+                    for (int idx = 0; idx < codes.length; idx++) {
+                        codes[idx] = frame.get() & 0xFF;
+                    }
+                    if (hand == 0) {
+                        bets[seat] = bet;
+                        cards[seat] = codes;
+                    }
+                }
+            }
+            assertEquals(0, frame.remaining());
+        }
+
+        boolean allows(Action action) {
+            return (actionMask & (1 << action.getOpcode())) != 0;
+        }
+    }
+}
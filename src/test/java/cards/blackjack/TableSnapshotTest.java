@@ -0,0 +1,98 @@
+package cards.blackjack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import cards.blackjack.Blackjack.Action;
+import cards.blackjack.Blackjack.GameState;
+import cards.common.Hand;
+import cards.common.Rank;
+import cards.common.RunningCount;
+import cards.common.SplitMixRandom;
+
+public class TableSnapshotTest {
+    private static final int PLAYERS = 3;
+
+    private static final int[] BETS = {10, 20, 30};
+
+    @Test
+    public void restoresTheTableSaved() {
+        // A single deck reshuffled while playing on from the snapshot
+        Blackjack game = new Blackjack(PLAYERS, 1000, TableRules.builder().decks(1).build(), new SplitMixRandom(11));
+        RunningCount count = game.countCards(CountingSystem.HI_LO);
+        play(game, 2);
+        assertEquals(GameState.INPLAY, game.action(Action.DEAL, BETS));
+
+        TableSnapshot snapshot = game.snapshot();
+        GameState state = game.getState();
+        int[][] hands = hands(game);
+        double[] chips = chips(game);
+        byte[] order = game.shoe().order();
+        int remaining = game.shoe().remaining();
+        int[] ranks = ranks(game);
+        int running = count.getCount();
+
+        // Finish the round and play on past a reshuffle
+        while (game.action(Action.STAND) == GameState.INPLAY) {
+        }
+        play(game, 10);
+        assertTrue(game.shoe().remaining() != remaining || count.getCount() != running);
+
+        game.restore(snapshot);
+        assertEquals(state, game.getState());
+        for (int seat = 0; seat <= PLAYERS; seat++) {
+            assertArrayEquals(hands[seat], hands(game)[seat]);
+        }
+        assertArrayEquals(chips, chips(game), 0);
+        assertArrayEquals(order, game.shoe().order());
+        assertEquals(remaining, game.shoe().remaining());
+        assertArrayEquals(ranks, ranks(game));
+        assertEquals(running, count.getCount());
+        assertEquals(snapshot, game.snapshot());
+
+        // The round goes on with the same cards
+        BlackjackPlayer player = game.currentPlayer();
+        game.action(Action.HIT);
+        assertEquals(order[remaining - 1], player.getHand().cardAt(2));
+    }
+
+    private static void play(Blackjack game, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            GameState state = game.action(Action.DEAL, BETS);
+            while (state == GameState.INPLAY) {
+                state = game.action(game.currentPlayer().value() < 15 ? Action.HIT : Action.STAND);
+            }
+        }
+    }
+
+    private static int[][] hands(Blackjack game) {
+        int[][] hands = new int[PLAYERS + 1][];
+        for (int seat = 0; seat <= PLAYERS; seat++) {
+            Hand hand = game.players().get(seat).getHand();
+            hands[seat] = new int[hand.size()];
+            for (int idx = 0; idx < hand.size(); idx++) {
+                hands[seat][idx] = hand.cardAt(idx);
+            }
+        }
+        return hands;
+    }
+
+    private static double[] chips(Blackjack game) {
+        double[] chips = new double[PLAYERS];
+        for (int seat = 1; seat <= PLAYERS; seat++) {
+            chips[seat - 1] = game.players().get(seat).getChips();
+        }
+        return chips;
+    }
+
+    private static int[] ranks(Blackjack game) {
+        int[] ranks = new int[Rank.values().length];
+        for (Rank rank : Rank.values()) {
+            ranks[rank.ordinal()] = game.remaining(rank);
+        }
+        return ranks;
+    }
+}